@@ -0,0 +1,163 @@
+package com.easelint.detector
+
+import com.android.tools.lint.client.api.UElementHandler
+import com.android.tools.lint.detector.api.*
+import com.easelint.utils.createWithMj
+import com.intellij.psi.PsiClass
+import com.intellij.psi.PsiClassType
+import com.intellij.psi.PsiElement
+import com.intellij.psi.PsiMember
+import com.intellij.psi.PsiType
+import org.jetbrains.uast.*
+import org.jetbrains.uast.visitor.AbstractUastVisitor
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * 不报告任何问题，只在 UAST 扫描时记录每个源文件声明的类与引用的类，
+ * 扫描结束后写入 module 的 build/intermediates/easelint/reference-index.txt。
+ * 插件开启 expandDependents 后读取该索引，把引用了本次改动类的文件一并加入扫描。
+ *
+ * 增量扫描时只覆盖本次扫描到的文件，其余记录保留，第一次需要全量扫描一次生成完整索引。
+ * 文件格式与插件中的 ReferenceIndex 约定一致：
+ * 文件绝对路径 \t 声明的类(逗号分隔) \t 引用的类(逗号分隔)
+ */
+class ReferenceIndexDetector : Detector(), SourceCodeScanner {
+    companion object {
+        val ISSUE_REFERENCE_INDEX = Issue.createWithMj<ReferenceIndexDetector>(
+            briefDescription = "生成文件引用索引",
+            explanation = "不报告问题，用于记录文件之间的引用关系，供增量扫描时扩展受影响的文件",
+            implementationScope = Scope.JAVA_FILE_SCOPE,
+            severity = Severity.INFORMATIONAL
+        )
+
+        const val INDEX_PATH = "intermediates/easelint/reference-index.txt"
+        private const val INDEX_HEADER = "#easelint-reference-index v1"
+
+        //平台类不会出现在 git diff 中，不需要记录
+        private val IGNORE_PREFIX = listOf("java.", "javax.", "kotlin.", "android.")
+    }
+
+    private class Entry(val declared: Set<String>, val references: Set<String>)
+
+    //project -> (文件路径 -> 记录)
+    private val entries = LinkedHashMap<Project, MutableMap<String, Entry>>()
+
+    override fun getApplicableUastTypes(): List<Class<out UElement>> {
+        return listOf(UFile::class.java)
+    }
+
+    override fun createUastHandler(context: JavaContext): UElementHandler {
+        return object : UElementHandler() {
+            override fun visitFile(node: UFile) {
+                val declared = LinkedHashSet<String>()
+                val references = HashSet<String>()
+                node.imports.forEach { addResolved(it.resolve(), references) }
+                node.accept(object : AbstractUastVisitor() {
+                    override fun visitClass(node: UClass): Boolean {
+                        node.qualifiedName?.let { declared.add(it) }
+                        node.uastSuperTypes.forEach { addType(it.type, references) }
+                        return super.visitClass(node)
+                    }
+
+                    override fun visitCallExpression(node: UCallExpression): Boolean {
+                        addResolved(node.resolve(), references)
+                        return super.visitCallExpression(node)
+                    }
+
+                    override fun visitSimpleNameReferenceExpression(
+                        node: USimpleNameReferenceExpression
+                    ): Boolean {
+                        addResolved(node.resolve(), references)
+                        return super.visitSimpleNameReferenceExpression(node)
+                    }
+
+                    override fun visitTypeReferenceExpression(
+                        node: UTypeReferenceExpression
+                    ): Boolean {
+                        addType(node.type, references)
+                        return super.visitTypeReferenceExpression(node)
+                    }
+                })
+                references.removeAll(declared)
+                entries.getOrPut(context.project) { HashMap() }[context.file.absolutePath] =
+                    Entry(declared, references)
+            }
+        }
+    }
+
+    override fun afterCheckRootProject(context: Context) {
+        entries.forEach { (project, scanned) ->
+            val buildFolder = project.buildModule?.buildFolder ?: File(project.dir, "build")
+            writeIndex(File(buildFolder, INDEX_PATH), scanned)
+        }
+        entries.clear()
+    }
+
+    private fun addResolved(element: PsiElement?, references: MutableSet<String>) {
+        val name = when (element) {
+            is PsiClass -> element.qualifiedName
+            is PsiMember -> element.containingClass?.qualifiedName
+            else -> null
+        }
+        addName(name, references)
+    }
+
+    private fun addType(type: PsiType, references: MutableSet<String>) {
+        addName((type as? PsiClassType)?.resolve()?.qualifiedName, references)
+    }
+
+    private fun addName(name: String?, references: MutableSet<String>) {
+        if (name == null || IGNORE_PREFIX.any { name.startsWith(it) }) return
+        references.add(name)
+    }
+
+    /**
+     * 合并旧索引：本次扫描到的文件整体覆盖，已删除的文件丢弃。
+     * 先写入临时文件再替换，扫描中断时不会留下写了一半的索引。
+     * 多个变种并行扫描时写的是同一个索引文件，按路径加锁保证读取-合并-替换整体串行，
+     * 不同变种的 lint 可能由不同 classloader 加载本类，所以锁对象使用 intern 后的路径
+     */
+    private fun writeIndex(output: File, scanned: Map<String, Entry>) {
+        synchronized(output.canonicalPath.intern()) {
+            mergeIndex(output, scanned)
+        }
+    }
+
+    private fun mergeIndex(output: File, scanned: Map<String, Entry>) {
+        val lines = LinkedHashMap<String, String>()
+        if (output.exists()) {
+            output.readLines().forEach { line ->
+                if (line.isEmpty() || line.startsWith("#")) return@forEach
+                val path = line.substringBefore('\t')
+                if (File(path).exists()) lines[path] = line
+            }
+        }
+        scanned.forEach { (path, entry) ->
+            lines[path] = path + "\t" + entry.declared.joinToString(",") +
+                    "\t" + entry.references.sorted().joinToString(",")
+        }
+        output.parentFile?.mkdirs()
+        val temp = File.createTempFile(output.name, ".tmp", output.parentFile)
+        try {
+            temp.bufferedWriter().use { writer ->
+                writer.write(INDEX_HEADER)
+                writer.newLine()
+                lines.values.forEach {
+                    writer.write(it)
+                    writer.newLine()
+                }
+            }
+            Files.move(
+                temp.toPath(),
+                output.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            )
+        } finally {
+            temp.delete()
+        }
+    }
+
+}
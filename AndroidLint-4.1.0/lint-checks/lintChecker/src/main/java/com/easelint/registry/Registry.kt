@@ -16,7 +16,8 @@ class Registry : IssueRegistry() {
             LayoutXmlDetector.ISSUE_RELATIVE_LAYOUT,
             ParseDetector.ISSUE_PARSE_COLOR,
             ParseDetector.ISSUE_PARSE_STRING,
-            SuppressWarningsDetector.ISSUE_SUPPRESS_ANNOTATION
+            SuppressWarningsDetector.ISSUE_SUPPRESS_ANNOTATION,
+            ReferenceIndexDetector.ISSUE_REFERENCE_INDEX
         )
     override val api: Int
         get() = CURRENT_API
@@ -19,6 +19,26 @@ dependencies {
     compileOnly(gradleApi())
 }
 
+//WarningMergeTable 的基准测试，不参与发布：./gradlew :lintGradle:warningMergeBenchmark
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output
+    runtimeClasspath += sourceSets["main"].output
+}
+//WarningMergeTable 是 internal 的
+kotlin.target.compilations.getByName("benchmark")
+    .associateWith(kotlin.target.compilations.getByName("main"))
+
+dependencies {
+    "benchmarkImplementation"(Dependencies.Kotlin.kotlin_stdlib)
+    "benchmarkImplementation"(Dependencies.Lint.lint_gradle)
+}
+
+tasks.register("warningMergeBenchmark", JavaExec::class) {
+    description = "Compare the nested map merge with WarningMergeTable"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.android.tools.lint.gradle.WarningMergeBenchmarkKt")
+}
+
 tasks.register("sourcesJar", Jar::class) {
     archiveClassifier.set("sources")
     from(sourceSets["main"].allSource)
@@ -41,3 +61,5 @@ publishing {
         }
     }
 }
+
+Publish.Maven.preventOverwrite(project)
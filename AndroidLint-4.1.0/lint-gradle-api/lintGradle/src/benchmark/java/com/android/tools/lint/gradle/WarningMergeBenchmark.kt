@@ -0,0 +1,139 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.Warning
+import com.android.tools.lint.detector.api.Category
+import com.android.tools.lint.detector.api.Detector
+import com.android.tools.lint.detector.api.Implementation
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import java.io.File
+
+/**
+ * mergeWarnings 去重部分的基准测试：原来的 issue -> message -> line -> offset -> fileName 五层嵌套 map
+ * 与 WarningMergeTable 对比，两者合并出的 warning 数量必须一致。
+ *
+ * 执行：./gradlew :lintGradle:warningMergeBenchmark --args="40000 8"
+ * 参数依次为每个变种的 warning 数与变种数，约 10% 的 warning 只出现在单个变种中
+ */
+fun main(args: Array<String>) {
+    val warningCount = args.getOrNull(0)?.toIntOrNull() ?: 40000
+    val variantCount = args.getOrNull(1)?.toIntOrNull() ?: 8
+    val warningMap = generate(warningCount, variantCount)
+    val allVariants: Set<String?> = warningMap.keys
+
+    val nestedSize = mergeNested(warningMap, allVariants)
+    val tableSize = mergeTable(warningMap, allVariants)
+    check(nestedSize == tableSize) { "merged size differs: nested=$nestedSize table=$tableSize" }
+
+    repeat(WARMUP) {
+        mergeNested(warningMap, allVariants)
+        mergeTable(warningMap, allVariants)
+    }
+    val nested = median { mergeNested(warningMap, allVariants) }
+    val table = median { mergeTable(warningMap, allVariants) }
+    println("warnings:$warningCount x $variantCount variants, merged:$tableSize")
+    println("nested map:${nested}ms WarningMergeTable:${table}ms (median of $ROUNDS)")
+}
+
+private const val WARMUP = 10
+private const val ROUNDS = 20
+private const val ISSUE_COUNT = 40
+private const val FILE_COUNT = 500
+
+private class BenchmarkDetector : Detector()
+
+private fun generate(warningCount: Int, variantCount: Int): Map<String, List<Warning>> {
+    val issues = (0 until ISSUE_COUNT).map {
+        Issue.create(
+            "Benchmark$it",
+            "benchmark",
+            "benchmark",
+            Category.CORRECTNESS,
+            5,
+            Severity.WARNING,
+            Implementation(BenchmarkDetector::class.java, Scope.JAVA_FILE_SCOPE)
+        )
+    }
+    val files = (0 until FILE_COUNT).map { File("src/main/java/pkg${it % 50}/File$it.kt") }
+    val warningMap = LinkedHashMap<String, List<Warning>>()
+    for (v in 0 until variantCount) {
+        val variantName = "variant$v"
+        //每个变种各自创建 warning 对象，与 lint 逐个变种扫描的结果一致
+        warningMap[variantName] = (0 until warningCount).map { i ->
+            val specific = i % 10 == 0
+            val message = if (specific) "message $i in $variantName" else "message $i"
+            //Warning 只保存 project，不会访问它
+            Warning(issues[i % ISSUE_COUNT], message, Severity.WARNING, null).apply {
+                file = files[i % FILE_COUNT]
+                line = i % 300
+                offset = i % 4000
+            }
+        }
+    }
+    return warningMap
+}
+
+/**
+ * 原实现的判重方式
+ */
+private fun mergeNested(
+    warningMap: Map<String, List<Warning>>,
+    allVariants: Set<String?>
+): Int {
+    val map: MutableMap<Issue, MutableMap<String, MutableMap<Int, MutableMap<Int, MutableMap<String, Warning>>>>> =
+        HashMap()
+    var merged = 0
+    for ((variantName, warnings) in warningMap) {
+        for (warning in warnings) {
+            val fileMap = map.getOrPut(warning.issue) { HashMap() }
+                .getOrPut(warning.message) { HashMap() }
+                .getOrPut(warning.line) { HashMap() }
+                .getOrPut(warning.offset) { HashMap() }
+            val fileName = WarningMergeTable.fileNameOf(warning)
+            val canonical = fileMap[fileName] ?: run {
+                fileMap[fileName] = warning
+                warning.variants = HashSet()
+                warning.allVariants = allVariants
+                merged++
+                warning
+            }
+            canonical.variants.add(variantName)
+        }
+    }
+    return merged
+}
+
+private fun mergeTable(
+    warningMap: Map<String, List<Warning>>,
+    allVariants: Set<String?>
+): Int {
+    var maxCount = 0
+    for (warnings in warningMap.values) {
+        maxCount = maxOf(warnings.size, maxCount)
+    }
+    val table = WarningMergeTable(2 * maxCount)
+    var merged = 0
+    for ((variantName, warnings) in warningMap) {
+        for (warning in warnings) {
+            val canonical = table.putIfAbsent(warning) ?: run {
+                warning.variants = HashSet()
+                warning.allVariants = allVariants
+                merged++
+                warning
+            }
+            canonical.variants.add(variantName)
+        }
+    }
+    return merged
+}
+
+private fun median(block: () -> Unit): Long {
+    val times = LongArray(ROUNDS) {
+        val start = System.nanoTime()
+        block()
+        (System.nanoTime() - start) / 1_000_000
+    }
+    times.sort()
+    return times[ROUNDS / 2]
+}
@@ -0,0 +1,38 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.detector.api.Location
+
+/**
+ * 开启 changedLinesOnly 时每个目标文件改动过的行，由插件侧的 LineRanges 生成。
+ *
+ * 每个文件的区间已经合并为互不相交的有序区间，以 [start0, end0, start1, end1, ...] 保存，
+ * 行号从 1 开始且两端都包含，判断一个 warning 是否落在改动上只需要一次二分查找
+ */
+class ChangedLines(private val lines: Map<String, IntArray>) {
+
+    /**
+     * 清单中没有的文件（手动配置或由引用扩展出的文件）以及没有行号的 warning 都保留
+     */
+    fun isReported(location: Location): Boolean {
+        val start = location.start ?: return true
+        if (start.line < 0) return true
+        val bounds = lines[location.file.absolutePath] ?: return true
+        //Position 的行号从 0 开始
+        val end = location.end?.line?.takeIf { it >= start.line } ?: start.line
+        return overlaps(bounds, start.line + 1, end + 1)
+    }
+
+    private fun overlaps(bounds: IntArray, start: Int, end: Int): Boolean {
+        //找到第一个结束行 >= start 的区间，再判断它的起始行是否 <= end
+        val size = bounds.size / 2
+        var low = 0
+        var high = size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (bounds[mid * 2 + 1] < start) low = mid + 1 else high = mid - 1
+        }
+        return low < size && bounds[low * 2] <= end
+    }
+
+    val size: Int get() = lines.size
+}
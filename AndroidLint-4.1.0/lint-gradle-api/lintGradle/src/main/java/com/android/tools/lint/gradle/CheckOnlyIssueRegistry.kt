@@ -0,0 +1,39 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.LintCliFlags
+import com.android.tools.lint.client.api.IssueRegistry
+import com.android.tools.lint.detector.api.Issue
+
+/**
+ * 配置了 checkOnly 时只暴露需要的内置 issue，lint 按 issue 建立的 scope 与 detector 对应表随之缩小，
+ * 不再为几百个不会启用的 issue 逐个判断配置、创建 detector。
+ *
+ * 自定义规则 jar 中的 issue 由 LintDriver 在扫描时合并进来，不受影响；
+ * disable、enable 与 severity 中引用的 id 仍然保留，避免 lint 校验 id 时报告 Unknown issue id，
+ * 它们在 checkOnly 模式下不会被启用
+ */
+class CheckOnlyIssueRegistry private constructor(
+    private val delegate: IssueRegistry,
+    override val issues: List<Issue>
+) : IssueRegistry() {
+
+    override val api: Int
+        get() = delegate.api
+
+    companion object {
+
+        /**
+         * @return 没有配置 checkOnly，或 checkOnly 中包含整个分类时返回原 registry
+         */
+        @JvmStatic
+        fun wrap(registry: IssueRegistry, flags: LintCliFlags): IssueRegistry {
+            val checkOnly = flags.exactCheckedIds ?: return registry
+            if (checkOnly.isEmpty() || !flags.exactCategories.isNullOrEmpty()) return registry
+            val needed = checkOnly - flags.suppressedIds
+            val referenced = flags.suppressedIds + flags.enabledIds + flags.severityOverrides.keys
+            val issues = registry.issues.filter { needed.contains(it.id) || referenced.contains(it.id) }
+            "issues:${issues.size}/${registry.issues.size} needed:$needed".log("CheckOnlyIssueRegistry")
+            return CheckOnlyIssueRegistry(registry, issues)
+        }
+    }
+}
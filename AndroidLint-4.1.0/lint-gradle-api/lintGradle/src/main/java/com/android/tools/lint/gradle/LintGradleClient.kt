@@ -19,6 +19,7 @@ import java.io.File.separator
 import java.io.IOException
 import java.net.URL
 import java.net.URLConnection
+import java.util.EnumSet
 import org.gradle.api.Project as GradleProject
 
 class LintGradleClient(
@@ -40,6 +41,28 @@ class LintGradleClient(
     private val isAndroid: Boolean
     private val resolver: KotlinSourceFoldersResolver
 
+    //按文件内容缓存的扫描结果，为空表示不使用缓存
+    private var resultCache: LintResultCache? = null
+
+    //开启 changedLinesOnly 时只报告改动过的行上的问题，为空表示不按行过滤
+    private var changedLines: ChangedLines? = null
+
+    //在 Gradle 调用任务的线程上读取的模型，lint 执行期间不再访问 Gradle 模型
+    private var model: ResolvedModel? = null
+
+    private class ResolvedModel(
+        val path: String,
+        val buildDir: File,
+        val rootBuildDir: File,
+        val offline: Boolean,
+        val ruleJars: Set<File>,
+        val subsetOnly: Boolean,
+        val narrowScope: Boolean,
+        val resultCacheEnabled: Boolean
+    ) {
+        var project: Project? = null
+    }
+
     fun getKotlinSourceFolders(project: GradleProject, variantName: String): List<File> {
         return resolver.getKotlinSourceFolders(variantName, project)
     }
@@ -106,7 +129,7 @@ class LintGradleClient(
     }
 
     private fun isOffline(): Boolean {
-        return gradleProject.gradle.startParameter.isOffline
+        return resolved().offline
     }
 
     override fun openConnection(url: URL): URLConnection? {
@@ -131,7 +154,7 @@ class LintGradleClient(
     }
 
     override fun findRuleJars(project: Project): Iterable<File> {
-        return variantInputs.ruleJars.asFileTree.filter { obj: File -> obj.isFile }.files
+        return resolved().ruleJars
     }
 
     override fun createProject(
@@ -154,7 +177,7 @@ class LintGradleClient(
         if (name != null) {
             relative += separator + name
         }
-        val dir = File(gradleProject.rootProject.buildDir, relative)
+        val dir = File(resolved().rootBuildDir, relative)
         return if (dir.exists() || create && dir.mkdirs()) {
             dir
         } else {
@@ -169,35 +192,74 @@ class LintGradleClient(
         // 就可以走 request.getProjects() ?: computeProjects(request.files)的逻辑
         // 读取自定义的文件（本来是用于IDE 增量扫描的），会自动根据文件 查找出所在的project
 //        lintRequest.setProjects(null)
-        val search = ProjectSearch()
-        val project = search.getProject(this, gradleProject, variantName)
+        val project = resolved().project
             ?: run {
                 lintRequest.setProjects(emptyList())
                 return
             }
-        val buildModel = project.buildModule
-        if (buildModel != null && !buildModel.dynamicFeatures.isEmpty()) {
-            for (feature in buildModel.dynamicFeatures) {
-                val rootProject = gradleProject.rootProject
-                val featureProject = rootProject.findProject(feature)
-                if (featureProject != null) {
-                    search.getProject(this, featureProject, variantName)?.let {
-                        project.mergeFolders(it)
-                    }
-                }
-            }
-        }
         lintRequest.setProjects(listOf(project))
         registerProject(project.dir, project)
         for (dependency in project.allLibraries) {
             registerProject(dependency.dir, dependency)
         }
+        //只添加当前 module 注册的文件，并行执行时其他 module 的文件不会混进来
+        val checkFiles = scanFiles()
         lintRequest.getProjects()?.forEach { project ->
             println("lintGradle:configureLintRequest:${project.name}")
-            ScanTargetContainer.checkFileList.forEach { file ->
+            checkFiles.forEach { file ->
                 project.addFile(file)
             }
         }
+        if (resultCache?.missedFiles?.isEmpty() == true) {
+            //全部命中缓存：空 scope 下 LintDriver 不会创建任何 detector，也不会准备 UAST 环境，
+            //只走报告流程输出下面放入的缓存 warning
+            "all targets hit the result cache, skip analysis".log("LintGradleClient")
+            lintRequest.setScope(EnumSet.noneOf(Scope::class.java))
+        } else if (resolved().narrowScope && lintRequest.getScope() == null) {
+            //只有 kt、java 文件时跳过资源、manifest、class 文件等阶段
+            TargetScope.infer(checkFiles)?.let { scope ->
+                val skipped = registry?.let { TargetScope.skippedIssues(it, scope) }
+                "scope:$scope skipped issues:$skipped".log("LintGradleClient")
+                lintRequest.setScope(scope)
+            }
+        }
+        //命中缓存的文件不再分析，直接把上一次的 warning 放进结果里一起输出报告
+        resultCache?.let { cache ->
+            warnings.addAll(cache.cachedWarnings(project))
+        }
+    }
+
+    /**
+     * 开启 -PeaseLintSubsetOnly=true 时裁剪 lint 需要准备的内容：
+     * 目标文件都不在测试目录下时忽略测试代码，UAST 环境不再加入测试源码目录与测试依赖，
+     * 只在测试代码中出现的问题不会再被报告。
+     * 只调整 LintCliFlags，主源码目录仍然全部交给 UAST，用于解析目标文件中的引用；
+     * checkDependencies 保持 lintOptions 中的配置
+     */
+    private fun applySubsetMode(project: Project?, files: List<File>) {
+        if (project == null || !resolved().subsetOnly) return
+        val testFolders = project.testSourceFolders
+        val hasTestTarget = files.any { file -> testFolders.any { file.startsWith(it) } }
+        if (!hasTestTarget) flags.isIgnoreTestSources = true
+        "subset files=${files.size} ignoreTestSources=${flags.isIgnoreTestSources}".log("LintGradleClient")
+    }
+
+    /**
+     * 需要交给 lint 分析的文件，开启缓存时只包含未命中的文件；
+     * 全部命中时使用僵尸文件占位，避免 project.subset 为空而把整个 module 当作扫描范围，
+     * 此时 configureLintRequest 会设置空的 scope，不进行分析
+     */
+    private fun scanFiles(): List<File> {
+        val cache = resultCache
+            ?: return ScanTargetContainer.getCheckListFiles(resolved().path, variantName)
+        val missedFiles = cache.missedFiles
+        if (missedFiles.isNotEmpty()) return missedFiles
+        val zombie = File(resolved().buildDir, "easeLint.zombie")
+        if (!zombie.exists()) {
+            zombie.parentFile.mkdirs()
+            zombie.createNewFile()
+        }
+        return listOf(zombie)
     }
 
     override fun createDriver(
@@ -213,9 +275,10 @@ class LintGradleClient(
      * Run lint with the given registry, optionally fix any warnings found and return the resulting
      * warnings
      */
-    fun run(registry: IssueRegistry): Pair<List<Warning>, LintBaseline?> {
+    fun run(issueRegistry: IssueRegistry): Pair<List<Warning>, LintBaseline?> {
         //先判断是否有待检查的文件，如果没有直接结束task
-        if (!ScanTargetContainer.hasTarget()) {
+        val model = resolved()
+        if (!ScanTargetContainer.hasTarget(model.path, variantName)) {
             //如果没有文件需要被扫描，那么不应该启动lint扫描
             //单单是从0启动lint 任务也需要先编译项目，这会浪费时间
             throw GradleException(
@@ -226,7 +289,16 @@ class LintGradleClient(
 // 这样设置在 4.1.0的AGP 环境下 运行easelint时  kotlin文件不会被检测
 // 看 有关google issue 的 帖子提到在7.0 这一问题似乎修复了
 // val exitCode = run(registry, ScanTargetContainer.checkFileList)
+        //checkOnly 时只保留需要的内置 issue，flags 在 syncOptions 之后才完整，所以在这里包装
+        val registry = CheckOnlyIssueRegistry.wrap(issueRegistry, flags)
+        this.registry = registry
+        changedLines = ScanTargetContainer.getChangedLines(model.path, variantName)
+        changedLines?.let { "changed lines files=${it.size}".log("LintGradleClient") }
+        //裁剪会改变分析结果，需要在计算缓存指纹之前完成，按全部目标文件判断，与缓存命中情况无关
+        applySubsetMode(model.project, ScanTargetContainer.getCheckListFiles(model.path, variantName))
+        resultCache = createResultCache(registry)
         val exitCode = run(registry, emptyList())
+        resultCache?.store(warnings)
         if (exitCode == ERRNO_CREATED_BASELINE) {
             if (continueAfterBaseLineCreated()) {
                 return Pair(emptyList(), driver.baseline)
@@ -241,6 +313,70 @@ class LintGradleClient(
         return Pair(warnings, driver.baseline)
     }
 
+    private fun createResultCache(registry: IssueRegistry): LintResultCache? {
+        val model = resolved()
+        //自动修复会改写源文件，不使用缓存；按行过滤后的结果依赖本次的 diff，也不使用缓存
+        if (!model.resultCacheEnabled || flags.isAutoFix || changedLines != null) return null
+        val cacheDir = getCacheDir("easelint-results", true) ?: return null
+        val cache = LintResultCache(
+            cacheDir,
+            registry,
+            LintResultCache.fingerprint(
+                version,
+                variantName ?: "",
+                registry,
+                flags,
+                model.ruleJars,
+                model.subsetOnly,
+                model.narrowScope,
+                model.project?.let { LintResultCache.modelInputs(it, variantInputs.mergedManifest) } ?: ""
+            )
+        )
+        cache.lookup(ScanTargetContainer.getCheckListFiles(model.path, variantName))
+        return cache
+    }
+
+    /**
+     * 读取 lint 执行期间需要的 Gradle 模型，必须在 Gradle 调用任务的线程上执行。
+     * 并行扫描多个变种时由 LintGradleExecution 在提交到线程池之前调用，单个变种时在 run 中调用
+     */
+    fun resolveModel() {
+        if (model != null) return
+        val resolved = ResolvedModel(
+            path = gradleProject.path,
+            buildDir = gradleProject.buildDir,
+            rootBuildDir = gradleProject.rootProject.buildDir,
+            offline = gradleProject.gradle.startParameter.isOffline,
+            ruleJars = variantInputs.ruleJars.asFileTree.filter { obj: File -> obj.isFile }.files,
+            subsetOnly = gradleProject.findProperty(PROPERTY_SUBSET_ONLY)?.toString() == "true",
+            narrowScope = gradleProject.findProperty(TargetScope.PROPERTY_NARROW_SCOPE)?.toString() == "true",
+            resultCacheEnabled =
+            gradleProject.findProperty(LintResultCache.PROPERTY_ENABLE)?.toString() != "false"
+        )
+        //ProjectSearch 创建 lint project 时会回调 client，先记录上面的内容
+        model = resolved
+        val search = ProjectSearch()
+        val project = search.getProject(this, gradleProject, variantName)
+        val buildModel = project?.buildModule
+        if (project != null && buildModel != null && !buildModel.dynamicFeatures.isEmpty()) {
+            for (feature in buildModel.dynamicFeatures) {
+                val rootProject = gradleProject.rootProject
+                val featureProject = rootProject.findProject(feature)
+                if (featureProject != null) {
+                    search.getProject(this, featureProject, variantName)?.let {
+                        project.mergeFolders(it)
+                    }
+                }
+            }
+        }
+        resolved.project = project
+    }
+
+    private fun resolved(): ResolvedModel {
+        resolveModel()
+        return model!!
+    }
+
     override fun addProgressPrinter() {
         // No progress printing from the Gradle lint task; gradle tasks
         // do not really do that, even for long-running jobs.
@@ -266,6 +402,10 @@ class LintGradleClient(
             // to flag this (and it's erroneous on library projects)
             return
         }
+        val lines = changedLines
+        if (lines != null && !lines.isReported(location)) {
+            return
+        }
         super.report(context, issue, severity, location, message, format, fix)
     }
 
@@ -290,6 +430,11 @@ class LintGradleClient(
         return super.getMergedManifest(project)
     }
 
+    companion object {
+        //-PeaseLintSubsetOnly=true 开启 applySubsetMode 中的裁剪，默认保持 lint 的扫描语义
+        const val PROPERTY_SUBSET_ONLY = "easeLintSubsetOnly"
+    }
+
     init {
         this.registry = registry
         this.buildToolInfoRevision = buildToolInfoRevision
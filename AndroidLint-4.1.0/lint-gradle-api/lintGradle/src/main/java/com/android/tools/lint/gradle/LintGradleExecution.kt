@@ -14,7 +14,6 @@ import com.android.tools.lint.gradle.api.LintExecutionRequest
 import com.android.tools.lint.gradle.api.VariantInputs
 import com.android.tools.lint.model.LintModelLintOptions
 import com.google.common.collect.Lists
-import com.google.common.collect.Maps
 import com.google.common.collect.Sets
 import org.gradle.api.GradleException
 import org.gradle.api.Project
@@ -23,6 +22,10 @@ import java.io.IOException
 import java.io.PrintWriter
 import java.io.StringWriter
 import java.lang.Exception
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 import kotlin.math.max
 
 /**
@@ -151,6 +154,21 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
         allowFix: Boolean,
         dispose: Boolean
     ): Pair<List<Warning>, LintBaseline?> {
+        return prepareLint(variantName, variantInputs, report, isAndroid, allowFix, dispose)()
+    }
+
+    /**
+     * 在当前线程上完成所有读取 Gradle 模型的准备工作（配置 flags、创建 lint project），
+     * 返回的函数只执行 lint 分析，可以交给其他线程执行
+     */
+    private fun prepareLint(
+        variantName: String?,
+        variantInputs: VariantInputs,
+        report: Boolean,
+        isAndroid: Boolean,
+        allowFix: Boolean,
+        dispose: Boolean
+    ): () -> Pair<List<Warning>, LintBaseline?> {
         val registry: IssueRegistry = createIssueRegistry(isAndroid)
         val flags = LintCliFlags()
         val client = LintGradleClient(
@@ -236,23 +254,26 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
             flags.isQuiet = true
         }
         flags.isWriteBaselineIfMissing = report && !fatalOnly && !autoFixing
-        val warnings: Pair<List<Warning>, LintBaseline?>
         if (autoFixing) {
             flags.isAutoFix = true
             flags.isSetExitCode = false
         }
-        try {
-            warnings = client.run(registry)
-        } catch (e: IOException) {
-            throw GradleException("Invalid arguments.", e)
-        }
-        if (dispose) {
-            client.disposeProjects(emptyList())
-        }
-        if (report && client.haveErrors() && flags.isSetExitCode) {
-            abort(client, warnings.first, isAndroid)
+        client.resolveModel()
+        return {
+            val warnings: Pair<List<Warning>, LintBaseline?>
+            try {
+                warnings = client.run(registry)
+            } catch (e: IOException) {
+                throw GradleException("Invalid arguments.", e)
+            }
+            if (dispose) {
+                client.disposeProjects(emptyList())
+            }
+            if (report && client.haveErrors() && flags.isSetExitCode) {
+                abort(client, warnings.first, isAndroid)
+            }
+            warnings
         }
-        return warnings
     }
 
     /** Runs lint on a single specified variant  */
@@ -293,29 +314,23 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
         // attribute unused resources to each variant, so don't make
         // each variant run go and inspect the inactive variant sources
         UnusedResourceDetector.sIncludeInactiveReferences = false
-        val warningMap: MutableMap<String, List<Warning>> = mutableMapOf()
-        val baselines: MutableList<LintBaseline> = mutableListOf()
-        var first = true
+        val variantInputsMap: MutableMap<String, VariantInputs> = linkedMapOf()
         for (variantName in variantNames) {
             // we are not running lint on all the variants, so skip the ones where we don't have
             // a variant inputs (see TaskManager::isLintVariant)
             val variantInputs = descriptor.getVariantInputs(variantName)
             if (variantInputs != null) {
-                val pair = runLint(
-                    variantName = variantName,
-                    variantInputs = variantInputs,
-                    report = false,
-                    isAndroid = true,
-                    allowFix = first,
-                    dispose = false
-                )
-                first = false
-                val warnings = pair.first
-                warningMap[variantName] = warnings
-                val baseline = pair.second
-                if (baseline != null) {
-                    baselines.add(baseline)
-                }
+                variantInputsMap[variantName] = variantInputs
+            }
+        }
+        val warningMap: MutableMap<String, List<Warning>> = mutableMapOf()
+        val baselines: MutableList<LintBaseline> = mutableListOf()
+        for ((variantName, pair) in lintVariants(variantInputsMap)) {
+            val warnings = pair.first
+            warningMap[variantName] = warnings
+            val baseline = pair.second
+            if (baseline != null) {
+                baselines.add(baseline)
             }
         }
 
@@ -427,6 +442,86 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
         }
     }
 
+    /**
+     * 扫描多个变种，默认串行。
+     * lint 27.1 的 LintDriver 与部分 detector 带有静态状态（比如 UnusedResourceDetector 的 sIncludeInactiveReferences），
+     * 同一个 JVM 中并行执行多个变种的结果没有验证过与串行一致，
+     * 所以只有显式传入 -PeaseLintVariantConcurrency 大于 1 时才并行，并发数同时受剩余内存限制；
+     * 结果按变种原有顺序返回，之后仍由 mergeWarnings 合并。
+     * Gradle 模型不是线程安全的，所有变种都先在当前线程上完成准备，线程池中只执行 lint 分析
+     */
+    private fun lintVariants(
+        variants: Map<String, VariantInputs>
+    ): Map<String, Pair<List<Warning>, LintBaseline?>> {
+        val firstVariant = variants.keys.firstOrNull()
+        val concurrency = variantConcurrency(variants.size)
+        if (concurrency <= 1) {
+            return variants.mapValues { (variantName, variantInputs) ->
+                prepareVariant(variantName, variantInputs, variantName == firstVariant)()
+            }
+        }
+        val lints = variants.mapValues { (variantName, variantInputs) ->
+            prepareVariant(variantName, variantInputs, variantName == firstVariant)
+        }
+        val threadCount = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(concurrency) { runnable ->
+            Thread(runnable, "easelint-variant-${threadCount.incrementAndGet()}").apply {
+                isDaemon = true
+            }
+        }
+        try {
+            val futures = lints.mapValues { (_, lint) ->
+                executor.submit(Callable { lint() })
+            }
+            return futures.mapValues { (_, future) ->
+                try {
+                    future.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private fun prepareVariant(
+        variantName: String,
+        variantInputs: VariantInputs,
+        allowFix: Boolean
+    ): () -> Pair<List<Warning>, LintBaseline?> {
+        return prepareLint(
+            variantName = variantName,
+            variantInputs = variantInputs,
+            report = false,
+            isAndroid = true,
+            allowFix = allowFix,
+            dispose = false
+        )
+    }
+
+    /**
+     * 自动修复会改写源文件，只能串行执行；
+     * 否则取配置的并发数（默认 1，即串行）、按剩余内存估算的并发数与变种数三者的最小值
+     */
+    private fun variantConcurrency(variantCount: Int): Int {
+        if (variantCount <= 1 || descriptor.autoFix) return 1
+        val project = descriptor.project
+        val configured = project.findProperty(PROPERTY_VARIANT_CONCURRENCY)?.toString()
+            ?.toIntOrNull() ?: 1
+        if (configured <= 1) return 1
+        val variantMemoryMb = project.findProperty(PROPERTY_VARIANT_MEMORY_MB)?.toString()
+            ?.toLongOrNull() ?: DEFAULT_VARIANT_MEMORY_MB
+        val runtime = Runtime.getRuntime()
+        val availableMb =
+            (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) / 1024 / 1024
+        val byMemory = max(1L, availableMb / max(1L, variantMemoryMb)).toInt()
+        val concurrency = max(1, minOf(configured, byMemory, variantCount))
+        "variants:$variantCount concurrency:$concurrency configured:$configured memory:$byMemory"
+            .log("LintGradleExecution")
+        return concurrency
+    }
+
     /**
      * Given a list of results from separate variants, merge them into a single list of warnings,
      * and mark their
@@ -453,47 +548,11 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
         }
         val merged: MutableList<Warning> = Lists.newArrayListWithExpectedSize(2 * maxCount)
 
-        // Map from issue to message to line number to column number to
-        // file name to canonical warning
-        val map: MutableMap<Issue, MutableMap<String, MutableMap<Int, MutableMap<Int, MutableMap<String, Warning>>>>> =
-            Maps.newHashMapWithExpectedSize(2 * maxCount)
+        // 按 issue、message、行号、列号、文件名判重，找到每个 warning 的 canonical warning
+        val table = WarningMergeTable(2 * maxCount)
         for ((variantName, warnings) in warningMap) {
             for (warning in warnings) {
-                val messageMap = map[warning.issue] ?: run {
-                    val new: MutableMap<String, MutableMap<Int, MutableMap<Int, MutableMap<String, Warning>>>> =
-                        mutableMapOf()
-                    map[warning.issue] = new
-                    new
-                }
-                val lineMap = messageMap[warning.message] ?: run {
-                    val new: MutableMap<Int, MutableMap<Int, MutableMap<String, Warning>>> =
-                        mutableMapOf()
-                    messageMap[warning.message] = new
-                    new
-                }
-                val columnMap = lineMap[warning.line] ?: run {
-                    val new: MutableMap<Int, MutableMap<String, Warning>> = mutableMapOf()
-                    lineMap[warning.line] = new
-                    new
-                }
-                val fileMap = columnMap[warning.offset] ?: run {
-                    val new: MutableMap<String, Warning> = mutableMapOf()
-                    columnMap[warning.offset] = new
-                    new
-                }
-                val file = warning.file
-                val fileName = if (file != null) {
-                    val parent = file.parentFile
-                    if (parent != null) {
-                        parent.name + "/" + file.name
-                    } else {
-                        file.name
-                    }
-                } else {
-                    "<unknown>"
-                }
-                val canonical = fileMap[fileName] ?: run {
-                    fileMap[fileName] = warning
+                val canonical = table.putIfAbsent(warning) ?: run {
                     warning.variants = Sets.newHashSet()
                     warning.allVariants = allVariants
                     merged.add(warning)
@@ -554,4 +613,13 @@ class LintGradleExecution(private val descriptor: LintExecutionRequest) {
             NonAndroidIssueRegistry()
         }
     }
+
+    companion object {
+        //-PeaseLintVariantConcurrency=4 多变种扫描时的最大并发数，默认 1，大于 1 时并行扫描（实验性）
+        private const val PROPERTY_VARIANT_CONCURRENCY = "easeLintVariantConcurrency"
+
+        //-PeaseLintVariantMemoryMb=1024 估算单个变种扫描占用的内存
+        private const val PROPERTY_VARIANT_MEMORY_MB = "easeLintVariantMemoryMb"
+        private const val DEFAULT_VARIANT_MEMORY_MB = 1024L
+    }
 }
\ No newline at end of file
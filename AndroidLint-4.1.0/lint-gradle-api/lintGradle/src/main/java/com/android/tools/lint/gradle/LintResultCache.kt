@@ -0,0 +1,276 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.LintCliFlags
+import com.android.tools.lint.Warning
+import com.android.tools.lint.client.api.IssueRegistry
+import com.android.tools.lint.detector.api.DefaultPosition
+import com.android.tools.lint.detector.api.Location
+import com.android.tools.lint.detector.api.Project
+import com.android.tools.lint.detector.api.Scope
+import com.android.tools.lint.detector.api.Severity
+import java.io.*
+import java.security.MessageDigest
+
+/**
+ * 按文件内容缓存 lint 结果，内容与扫描配置都没变的文件不再重新分析，直接使用上一次的 warning。
+ *
+ * 缓存 key = sha256(配置指纹 + 文件绝对路径 + 文件内容 sha256)，
+ * 配置指纹包含 lint 版本、issue 清单、checkOnly/disable/enable 等影响结果的参数、自定义规则包与 baseline 的内容，
+ * 以及 lint model 中的 minSdk/targetSdk、合并后的 manifest 与依赖，见 [modelInputs]，
+ * 所以切换分支后再切回来，没有改动的文件仍然可以命中。
+ * 报告了跨文件 issue（scope 不是单个文件，比如未使用的资源）的文件不会写入缓存，下次仍然重新分析。
+ *
+ * lint 的结果并不只取决于文件自身，缓存仍然可能过期：
+ * 其他源文件的签名、被引用的资源等同一 module 中其他文件的变化不在 key 中，
+ * 上一次没有跨文件问题的文件在其他文件变化后也可能出现新的问题。需要完整结果时用 -PeaseLintResultCache=false 关闭缓存。
+ */
+class LintResultCache(
+    private val cacheDir: File,
+    private val registry: IssueRegistry,
+    private val fingerprint: String
+) {
+    private class CachedWarning(
+        val issueId: String,
+        val severity: String,
+        val message: String,
+        val line: Int,
+        val offset: Int,
+        val endOffset: Int,
+        val startColumn: Int,
+        val endLine: Int,
+        val endColumn: Int,
+        val errorLine: String?
+    )
+
+    //命中缓存的文件 -> 缓存的 warning
+    private val hits = LinkedHashMap<File, List<CachedWarning>>()
+
+    //未命中的文件 -> 缓存 key
+    private val misses = LinkedHashMap<File, String>()
+
+    val missedFiles: List<File> get() = ArrayList(misses.keys)
+
+    /**
+     * 把目标文件分成命中与未命中两部分，只有未命中的文件需要交给 lint 分析
+     */
+    fun lookup(files: List<File>) {
+        files.forEach { file ->
+            val key = keyOf(file)
+            val cached = if (key == null) null else read(File(cacheDir, key))
+            if (cached != null) {
+                hits[file] = cached
+            } else if (key != null) {
+                misses[file] = key
+            }
+        }
+        "hit:${hits.size} miss:${misses.size}".log("LintResultCache")
+    }
+
+    /**
+     * 把命中缓存的 warning 还原到 [project] 上
+     */
+    fun cachedWarnings(project: Project): List<Warning> {
+        val result = ArrayList<Warning>()
+        hits.forEach { (file, cached) ->
+            val contents = if (cached.isEmpty()) null else file.readText()
+            cached.forEach { item ->
+                val issue = registry.getIssue(item.issueId) ?: return@forEach
+                val warning = Warning(
+                    issue,
+                    item.message,
+                    Severity.valueOf(item.severity),
+                    project
+                )
+                warning.file = file
+                warning.path = file.path
+                warning.line = item.line
+                warning.offset = item.offset
+                warning.endOffset = item.endOffset
+                warning.errorLine = item.errorLine
+                warning.fileContents = contents
+                warning.location = Location.create(
+                    file,
+                    DefaultPosition(item.line, item.startColumn, item.offset),
+                    DefaultPosition(item.endLine, item.endColumn, item.endOffset)
+                )
+                result.add(warning)
+            }
+        }
+        return result
+    }
+
+    /**
+     * 写入本次分析的结果，没有 warning 的文件也要写入一个空记录；
+     * 报告了跨文件 issue 的文件不写入，它的结果取决于其他文件
+     */
+    fun store(warnings: List<Warning>) {
+        if (misses.isEmpty()) return
+        val grouped = HashMap<File, MutableList<Warning>>()
+        val uncacheable = HashSet<File>()
+        warnings.forEach { warning ->
+            val file = warning.file ?: return@forEach
+            if (!misses.containsKey(file)) return@forEach
+            if (!Scope.checkSingleFile(warning.issue.implementation.scope)) {
+                uncacheable.add(file)
+            }
+            grouped.getOrPut(file) { ArrayList() }.add(warning)
+        }
+        if (uncacheable.isNotEmpty()) "uncacheable:${uncacheable.size}".log("LintResultCache")
+        cacheDir.mkdirs()
+        misses.forEach { (file, key) ->
+            if (uncacheable.contains(file)) return@forEach
+            try {
+                write(File(cacheDir, key), grouped[file] ?: emptyList())
+            } catch (e: IOException) {
+                "can not write cache for ${file.absolutePath}: ${e.message}".log("LintResultCache")
+            }
+        }
+    }
+
+    private fun keyOf(file: File): String? {
+        if (!file.isFile) return null
+        return sha256(fingerprint, file.absolutePath, sha256(file.readBytes()))
+    }
+
+    private fun read(entry: File): List<CachedWarning>? {
+        if (!entry.isFile) return null
+        return try {
+            DataInputStream(BufferedInputStream(FileInputStream(entry))).use { input ->
+                if (input.readInt() != FORMAT_VERSION) return null
+                val count = input.readInt()
+                val list = ArrayList<CachedWarning>(count)
+                repeat(count) {
+                    list.add(
+                        CachedWarning(
+                            issueId = input.readUTF(),
+                            severity = input.readUTF(),
+                            message = input.readUTF(),
+                            line = input.readInt(),
+                            offset = input.readInt(),
+                            endOffset = input.readInt(),
+                            startColumn = input.readInt(),
+                            endLine = input.readInt(),
+                            endColumn = input.readInt(),
+                            errorLine = if (input.readBoolean()) input.readUTF() else null
+                        )
+                    )
+                }
+                list
+            }
+        } catch (e: IOException) {
+            //缓存损坏时当作未命中
+            null
+        }
+    }
+
+    private fun write(entry: File, warnings: List<Warning>) {
+        //多个变种并行扫描时可能同时写同一个 key
+        val tmp = File(entry.parentFile, "${entry.name}.${Thread.currentThread().id}.tmp")
+        DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use { output ->
+            output.writeInt(FORMAT_VERSION)
+            output.writeInt(warnings.size)
+            warnings.forEach { warning ->
+                val start = warning.location?.start
+                val end = warning.location?.end
+                output.writeUTF(warning.issue.id)
+                output.writeUTF(warning.severity.name)
+                output.writeUTF(warning.message)
+                output.writeInt(warning.line)
+                output.writeInt(warning.offset)
+                output.writeInt(warning.endOffset)
+                output.writeInt(start?.column ?: -1)
+                output.writeInt(end?.line ?: warning.line)
+                output.writeInt(end?.column ?: -1)
+                val errorLine = warning.errorLine
+                output.writeBoolean(errorLine != null)
+                if (errorLine != null) output.writeUTF(errorLine)
+            }
+        }
+        if (!tmp.renameTo(entry)) {
+            entry.delete()
+            tmp.renameTo(entry)
+        }
+    }
+
+    companion object {
+        private const val FORMAT_VERSION = 1
+
+        //-PeaseLintResultCache=false 关闭缓存
+        const val PROPERTY_ENABLE = "easeLintResultCache"
+
+        /**
+         * 计算配置指纹，任何会影响 lint 结果的参数变化后缓存自动失效
+         */
+        fun fingerprint(
+            version: String,
+            variantName: String,
+            registry: IssueRegistry,
+            flags: LintCliFlags,
+            ruleJars: Collection<File>,
+            subsetOnly: Boolean,
+            narrowScope: Boolean,
+            modelInputs: String
+        ): String {
+            val lintConfig = flags.defaultConfiguration
+            val baseline = flags.baselineFile
+            return sha256(
+                version,
+                variantName,
+                registry.issues.map { it.id }.sorted().joinToString(","),
+                flags.exactCheckedIds?.sorted()?.joinToString(",") ?: "",
+                flags.suppressedIds.sorted().joinToString(","),
+                flags.enabledIds.sorted().joinToString(","),
+                flags.severityOverrides.toSortedMap().toString(),
+                "${flags.isFatalOnly}${flags.isCheckAllWarnings}${flags.isIgnoreWarnings}${flags.isWarningsAsErrors}",
+                //只扫描目标文件时的裁剪，见 LintGradleClient.applySubsetMode
+                "$subsetOnly${flags.isIgnoreTestSources}${flags.isCheckDependencies}",
+                //按目标文件类型收窄扫描范围后部分 issue 不会执行，见 TargetScope
+                "$narrowScope",
+                if (lintConfig != null && lintConfig.isFile) sha256(lintConfig.readBytes()) else "",
+                //自定义规则包通常是 project 依赖，版本号一直是 unspecified，只能按内容区分
+                ruleJars.filter { it.isFile }.sortedBy { it.name }
+                    .joinToString(",") { "${it.name}:${sha256(it.readBytes())}" },
+                //baseline 中的问题不会被报告，baseline 变化后之前记录为无问题的文件需要重新分析
+                if (baseline != null && baseline.isFile) sha256(baseline.readBytes()) else "",
+                modelInputs
+            )
+        }
+
+        /**
+         * lint model 中影响结果的部分：
+         * minSdk/targetSdk 影响 NewApi 等检查，合并后的 manifest 影响权限等检查，依赖影响引用的解析
+         *
+         * @param mergedManifest 当前变种合并后的 manifest
+         */
+        fun modelInputs(project: Project, mergedManifest: File?): String {
+            return sha256(
+                project.minSdkVersion.apiString,
+                project.targetSdkVersion.apiString,
+                project.buildSdk.toString(),
+                if (mergedManifest != null && mergedManifest.isFile) sha256(mergedManifest.readBytes()) else "",
+                //依赖的 jar 位于 Gradle 缓存中，路径里包含 group/name/version
+                project.getJavaLibraries(true).map { it.path }.sorted().joinToString(","),
+                project.allLibraries.map { it.dir.path }.sorted().joinToString(",")
+            )
+        }
+
+        private fun sha256(vararg parts: String): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            parts.forEach {
+                digest.update(it.toByteArray(Charsets.UTF_8))
+                digest.update(0.toByte())
+            }
+            return digest.digest().toHex()
+        }
+
+        private fun sha256(bytes: ByteArray): String {
+            return MessageDigest.getInstance("SHA-256").digest(bytes).toHex()
+        }
+
+        private fun ByteArray.toHex(): String {
+            val builder = StringBuilder(size * 2)
+            forEach { builder.append(String.format("%02x", it)) }
+            return builder.toString()
+        }
+    }
+}
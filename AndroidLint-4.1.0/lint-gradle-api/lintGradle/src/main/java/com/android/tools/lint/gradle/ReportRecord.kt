@@ -0,0 +1,182 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.Warning
+import com.android.tools.lint.detector.api.TextFormat
+import java.io.*
+import java.util.*
+
+/**
+ * 报告中一条问题所需的字段，从 [Warning] 中提取出来后就不再引用 lint 的对象，
+ * 可以序列化到磁盘，供 [ExternalRecordSorter] 溢写使用。
+ * summary 与 explanation 每个 issue 只有一份，不随记录保存，写出报告时按 [id] 查找
+ */
+class ReportRecord(
+    val id: String,
+    val severity: String,
+    val isError: Boolean,
+    val message: String,
+    val category: String,
+    val priority: Int,
+    val errorLine1: String,
+    val errorLine2: String,
+    val file: String,
+    val line: Int,
+    val column: Int
+) {
+    fun writeTo(output: DataOutput) {
+        output.writeUTF(id)
+        output.writeUTF(severity)
+        output.writeBoolean(isError)
+        output.writeLongUTF(message)
+        output.writeUTF(category)
+        output.writeInt(priority)
+        output.writeLongUTF(errorLine1)
+        output.writeLongUTF(errorLine2)
+        output.writeUTF(file)
+        output.writeInt(line)
+        output.writeInt(column)
+    }
+
+    companion object {
+        /**
+         * 与 lint 报告的排序规则保持一致：分类、优先级（高的在前）、id、文件、行、列、message
+         */
+        val ORDER: Comparator<ReportRecord> = compareBy<ReportRecord>(
+            { it.category },
+            { -it.priority },
+            { it.id },
+            { it.file },
+            { it.line },
+            { it.column },
+            { it.message }
+        )
+
+        fun from(warning: Warning): ReportRecord {
+            val issue = warning.issue
+            val errorLines = warning.errorLine?.split('\n').orEmpty()
+            return ReportRecord(
+                id = issue.id,
+                severity = warning.severity.description,
+                isError = warning.severity.isError,
+                message = TextFormat.RAW.convertTo(warning.message, TextFormat.TEXT),
+                category = issue.category.fullName,
+                priority = issue.priority,
+                errorLine1 = errorLines.getOrNull(0) ?: "",
+                errorLine2 = errorLines.getOrNull(1) ?: "",
+                file = warning.file?.path ?: warning.path ?: "",
+                line = if (warning.line >= 0) warning.line + 1 else -1,
+                column = warning.location?.start?.column?.let { if (it >= 0) it + 1 else -1 } ?: -1
+            )
+        }
+
+        fun readFrom(input: DataInput): ReportRecord {
+            return ReportRecord(
+                id = input.readUTF(),
+                severity = input.readUTF(),
+                isError = input.readBoolean(),
+                message = input.readLongUTF(),
+                category = input.readUTF(),
+                priority = input.readInt(),
+                errorLine1 = input.readLongUTF(),
+                errorLine2 = input.readLongUTF(),
+                file = input.readUTF(),
+                line = input.readInt(),
+                column = input.readInt()
+            )
+        }
+
+        //writeUTF 最多 64K，message 与源码行可能超出
+        private fun DataOutput.writeLongUTF(value: String) {
+            val bytes = value.toByteArray(Charsets.UTF_8)
+            writeInt(bytes.size)
+            write(bytes)
+        }
+
+        private fun DataInput.readLongUTF(): String {
+            val bytes = ByteArray(readInt())
+            readFully(bytes)
+            return String(bytes, Charsets.UTF_8)
+        }
+    }
+}
+
+/**
+ * 外部归并排序：内存中最多保留 [maxInMemory] 条记录，超过后排序并溢写到临时文件，
+ * 最后对所有分段做多路归并，按 [ReportRecord.ORDER] 输出
+ */
+class ExternalRecordSorter(
+    private val maxInMemory: Int,
+    private val tempDir: File?
+) : Closeable {
+    private val buffer = ArrayList<ReportRecord>()
+    private val runs = ArrayList<File>()
+    private val openInputs = ArrayList<DataInputStream>()
+
+    var size = 0
+        private set
+
+    fun add(record: ReportRecord) {
+        buffer.add(record)
+        size++
+        if (buffer.size >= maxInMemory) spill()
+    }
+
+    /**
+     * 只能调用一次，返回的 Sequence 需要在 [close] 之前消费完
+     */
+    fun sorted(): Sequence<ReportRecord> {
+        if (runs.isEmpty()) {
+            buffer.sortWith(ReportRecord.ORDER)
+            return buffer.asSequence()
+        }
+        if (buffer.isNotEmpty()) spill()
+        val inputs = runs.map {
+            DataInputStream(BufferedInputStream(FileInputStream(it))).also { input ->
+                openInputs.add(input)
+            }
+        }
+        val remaining = IntArray(inputs.size) { i -> inputs[i].readInt() }
+        val queue = PriorityQueue<Pair<ReportRecord, Int>>(
+            inputs.size.coerceAtLeast(1),
+            Comparator { a, b -> ReportRecord.ORDER.compare(a.first, b.first) }
+        )
+        inputs.forEachIndexed { i, input ->
+            if (remaining[i] > 0) {
+                remaining[i]--
+                queue.add(ReportRecord.readFrom(input) to i)
+            }
+        }
+        return generateSequence {
+            val head = queue.poll() ?: return@generateSequence null
+            val i = head.second
+            if (remaining[i] > 0) {
+                remaining[i]--
+                queue.add(ReportRecord.readFrom(inputs[i]) to i)
+            }
+            head.first
+        }
+    }
+
+    private fun spill() {
+        buffer.sortWith(ReportRecord.ORDER)
+        //先登记再写入，写入失败时也由 close 删除；daemon 长期存活，不使用 deleteOnExit
+        val run = File.createTempFile("easelint-report", ".run", tempDir)
+        runs.add(run)
+        DataOutputStream(BufferedOutputStream(FileOutputStream(run))).use { output ->
+            output.writeInt(buffer.size)
+            buffer.forEach { it.writeTo(output) }
+        }
+        buffer.clear()
+    }
+
+    override fun close() {
+        try {
+            openInputs.forEach { it.close() }
+        } finally {
+            openInputs.clear()
+            runs.forEach { it.delete() }
+            runs.clear()
+            buffer.clear()
+        }
+    }
+}
@@ -2,28 +2,89 @@ package com.android.tools.lint.gradle
 
 import java.io.File
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * 按 module 保存待扫描的文件，key 为 gradle project path 与 variant，
+ * 开启 --parallel 时多个 module 的 lint 任务同时运行也互不干扰。
+ * 插件侧通过反射在 lint 运行前注册，运行结束或构建结束时清理。
+ */
 object ScanTargetContainer {
 
+    private val checkFiles = ConcurrentHashMap<String, List<File>>()
+
+    //开启 changedLinesOnly 时每个文件的改动行，见 ChangedLines
+    private val changedLines = ConcurrentHashMap<String, ChangedLines>()
+
     @JvmStatic
-    var checkFileList: LinkedList<File> = LinkedList()
-        private set
+    fun keyOf(projectPath: String, variantName: String?): String {
+        return if (variantName.isNullOrEmpty()) projectPath else "$projectPath:$variantName"
+    }
 
     /**
      * 直接反射操作 checkFileList 因为AS的bug 一直卡在类型识别上，这里给个方法用来设置，绕开这个bug
+     * 同一个 key 重复注册时覆盖之前的文件
+     *
+     * @param variantName 为空时对该 module 的所有变种生效
      */
     @JvmStatic
-    fun putCheckListFiles(files: List<File>) {
-        checkFileList.addAll(files)
+    fun putCheckListFiles(projectPath: String, variantName: String?, files: List<File>) {
+        checkFiles[keyOf(projectPath, variantName)] =
+            Collections.unmodifiableList(ArrayList(files))
     }
 
+    /**
+     * 优先读取对应变种的文件，没有时退回到 module 级别的注册
+     */
     @JvmStatic
-    fun hasTarget(): Boolean {
-        "checkFileList.size=${checkFileList.size}".log("ScanTargetContainer")
-        checkFileList.forEach {
-            "file:${it.absolutePath}".log("ScanTargetContainer")
+    fun getCheckListFiles(projectPath: String, variantName: String?): List<File> {
+        return checkFiles[keyOf(projectPath, variantName)]
+            ?: checkFiles[projectPath]
+            ?: emptyList()
+    }
+
+    /**
+     * 注册改动行，[lines] 为空表示不按行过滤
+     */
+    @JvmStatic
+    fun putChangedLines(projectPath: String, variantName: String?, lines: Map<String, IntArray>) {
+        val key = keyOf(projectPath, variantName)
+        if (lines.isEmpty()) {
+            changedLines.remove(key)
+        } else {
+            changedLines[key] = ChangedLines(HashMap(lines))
         }
-        return checkFileList.isNotEmpty()
     }
 
-}
\ No newline at end of file
+    @JvmStatic
+    fun getChangedLines(projectPath: String, variantName: String?): ChangedLines? {
+        return changedLines[keyOf(projectPath, variantName)] ?: changedLines[projectPath]
+    }
+
+    @JvmStatic
+    fun hasTarget(projectPath: String, variantName: String?): Boolean {
+        val files = getCheckListFiles(projectPath, variantName)
+        val key = keyOf(projectPath, variantName)
+        "[$key] checkFileList.size=${files.size}".log("ScanTargetContainer")
+        files.forEach {
+            "[$key] file:${it.absolutePath}".log("ScanTargetContainer")
+        }
+        return files.isNotEmpty()
+    }
+
+    @JvmStatic
+    fun remove(projectPath: String, variantName: String?) {
+        checkFiles.remove(keyOf(projectPath, variantName))
+        changedLines.remove(keyOf(projectPath, variantName))
+    }
+
+    /**
+     * 构建结束时调用，lint classloader 会在 daemon 中一直存活，避免残留上一次构建的文件
+     */
+    @JvmStatic
+    fun clearAll() {
+        checkFiles.clear()
+        changedLines.clear()
+    }
+
+}
@@ -0,0 +1,321 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.detector.api.Issue
+import com.android.tools.lint.detector.api.TextFormat
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.OutputStream
+import java.io.Writer
+import javax.xml.stream.XMLOutputFactory
+import javax.xml.stream.XMLStreamWriter
+
+/**
+ * 逐条写出报告，不在内存中拼接整份报告
+ */
+interface StreamingReportWriter {
+    fun begin()
+
+    /**
+     * @param issue [record] 对应的 issue，用于输出 summary、explanation 等每个 issue 共用的内容
+     */
+    fun write(record: ReportRecord, issue: Issue)
+
+    fun end()
+}
+
+/**
+ * 与 lint 的 XmlReporter 输出相同的结构，TreatEaseLintResultTask 等下游解析不需要区分
+ */
+class XmlStreamingReportWriter(
+    writer: Writer,
+    private val lintVersion: String
+) : StreamingReportWriter {
+    private val xml: XMLStreamWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(writer)
+
+    override fun begin() {
+        xml.writeStartDocument("UTF-8", "1.0")
+        xml.writeCharacters("\n")
+        xml.writeStartElement("issues")
+        xml.writeAttribute("format", "5")
+        xml.writeAttribute("by", "lint $lintVersion")
+        xml.writeCharacters("\n")
+    }
+
+    override fun write(record: ReportRecord, issue: Issue) {
+        xml.writeCharacters("\n    ")
+        xml.writeStartElement("issue")
+        xml.writeAttribute("id", record.id)
+        xml.writeAttribute("severity", record.severity)
+        xml.writeAttribute("message", record.message)
+        xml.writeAttribute("category", record.category)
+        xml.writeAttribute("priority", record.priority.toString())
+        xml.writeAttribute("summary", issue.getBriefDescription(TextFormat.TEXT))
+        xml.writeAttribute("explanation", issue.getExplanation(TextFormat.TEXT))
+        if (record.errorLine1.isNotEmpty()) {
+            xml.writeAttribute("errorLine1", record.errorLine1)
+            xml.writeAttribute("errorLine2", record.errorLine2)
+        }
+        xml.writeCharacters("\n        ")
+        xml.writeEmptyElement("location")
+        xml.writeAttribute("file", record.file)
+        if (record.line > 0) xml.writeAttribute("line", record.line.toString())
+        if (record.column > 0) xml.writeAttribute("column", record.column.toString())
+        xml.writeCharacters("\n    ")
+        xml.writeEndElement()
+        xml.writeCharacters("\n")
+    }
+
+    override fun end() {
+        xml.writeCharacters("\n")
+        xml.writeEndElement()
+        xml.writeCharacters("\n")
+        xml.writeEndDocument()
+        xml.flush()
+    }
+}
+
+/**
+ * 简化版 html 报告：按排序顺序输出一张问题表，末尾附上各 issue 的数量
+ */
+class HtmlStreamingReportWriter(private val writer: Writer) : StreamingReportWriter {
+    private val counts = LinkedHashMap<String, Int>()
+
+    override fun begin() {
+        writer.write(
+            "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n" +
+                    "<title>EaseLint Report</title>\n" +
+                    "<style>td{vertical-align:top;padding:2px 8px}pre{margin:0}" +
+                    ".Error,.Fatal{color:#c00}.Warning{color:#b60}</style>\n" +
+                    "</head>\n<body>\n<table>\n" +
+                    "<tr><th>Severity</th><th>Id</th><th>Location</th><th>Message</th></tr>\n"
+        )
+    }
+
+    override fun write(record: ReportRecord, issue: Issue) {
+        counts[record.id] = (counts[record.id] ?: 0) + 1
+        writer.write("<tr><td class=\"")
+        writer.write(record.severity.escapeHtml())
+        writer.write("\">")
+        writer.write(record.severity.escapeHtml())
+        writer.write("</td><td title=\"")
+        writer.write(issue.getBriefDescription(TextFormat.TEXT).escapeHtml())
+        writer.write("\">")
+        writer.write(record.id.escapeHtml())
+        writer.write("</td><td>")
+        writer.write(record.file.escapeHtml())
+        if (record.line > 0) writer.write(":${record.line}")
+        writer.write("</td><td>")
+        writer.write(record.message.escapeHtml())
+        if (record.errorLine1.isNotEmpty()) {
+            writer.write("<pre>")
+            writer.write(record.errorLine1.escapeHtml())
+            writer.write("\n")
+            writer.write(record.errorLine2.escapeHtml())
+            writer.write("</pre>")
+        }
+        writer.write("</td></tr>\n")
+    }
+
+    override fun end() {
+        writer.write("</table>\n<h3>Summary</h3>\n<table>\n")
+        counts.forEach { (id, count) ->
+            writer.write("<tr><td>${id.escapeHtml()}</td><td>$count</td></tr>\n")
+        }
+        writer.write("</table>\n</body>\n</html>\n")
+        writer.flush()
+    }
+
+    private fun String.escapeHtml(): String {
+        val builder = StringBuilder(length)
+        forEach {
+            when (it) {
+                '<' -> builder.append("&lt;")
+                '>' -> builder.append("&gt;")
+                '&' -> builder.append("&amp;")
+                '"' -> builder.append("&quot;")
+                else -> builder.append(it)
+            }
+        }
+        return builder.toString()
+    }
+}
+
+/**
+ * SARIF 2.1.0，results 在前逐条写出，规则列表在遍历过程中收集，最后写在 tool 节点里；
+ * 文件位置相对 [srcRoot] 输出，见 [artifactLocationOf]
+ */
+class SarifStreamingReportWriter(
+    private val writer: Writer,
+    private val lintVersion: String,
+    private val srcRoot: File?
+) : StreamingReportWriter {
+    //id -> summary
+    private val rules = LinkedHashMap<String, String>()
+    private var first = true
+
+    override fun begin() {
+        writer.write(
+            "{\n  \"\$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n" +
+                    "  \"version\": \"2.1.0\",\n  \"runs\": [\n    {\n      \"results\": ["
+        )
+    }
+
+    override fun write(record: ReportRecord, issue: Issue) {
+        rules.getOrPut(record.id) { issue.getBriefDescription(TextFormat.TEXT) }
+        writer.write(if (first) "\n" else ",\n")
+        first = false
+        writer.write("        {\"ruleId\": ")
+        writer.write(record.id.toJson())
+        writer.write(", \"level\": ")
+        writer.write(levelOf(record).toJson())
+        writer.write(", \"message\": {\"text\": ")
+        writer.write(record.message.toJson())
+        writer.write("}, \"locations\": [{\"physicalLocation\": {\"artifactLocation\": ")
+        writer.write(artifactLocationOf(record.file))
+        if (record.line > 0) {
+            writer.write(", \"region\": {\"startLine\": ${record.line}")
+            if (record.column > 0) writer.write(", \"startColumn\": ${record.column}")
+            writer.write("}")
+        }
+        writer.write("}}]}")
+    }
+
+    override fun end() {
+        writer.write("\n      ],\n      ")
+        writeOriginalUriBaseIds()
+        writer.write("\"tool\": {\"driver\": {\"name\": \"EaseLint\", ")
+        writer.write("\"version\": ${lintVersion.toJson()}, \"rules\": [")
+        var firstRule = true
+        rules.forEach { (id, summary) ->
+            writer.write(if (firstRule) "\n" else ",\n")
+            firstRule = false
+            writer.write("        {\"id\": ${id.toJson()}, \"shortDescription\": {\"text\": ${summary.toJson()}}}")
+        }
+        writer.write("\n      ]}}\n    }\n  ]\n}\n")
+        writer.flush()
+    }
+
+    /**
+     * [srcRoot] 下的文件写为相对 %SRCROOT% 的 URI，其他文件写为绝对的 file URI，
+     * 都经过百分号编码：Windows 盘符不会被解析为 scheme，空格与 # 也不会截断路径
+     */
+    private fun artifactLocationOf(path: String): String {
+        if (path.isEmpty()) return "{\"uri\": \"\"}"
+        val file = File(path).absoluteFile
+        val relative = srcRoot?.let { file.relativeToOrNull(it)?.invariantSeparatorsPath }
+        if (relative != null && relative.isNotEmpty() && relative != ".." && !relative.startsWith("../")) {
+            return "{\"uri\": ${relative.split('/').joinToString("/") { it.encodeSegment() }.toJson()}, " +
+                    "\"uriBaseId\": \"$SRC_ROOT\"}"
+        }
+        return "{\"uri\": ${file.toURI().toASCIIString().toJson()}}"
+    }
+
+    private fun writeOriginalUriBaseIds() {
+        val root = srcRoot ?: return
+        val uri = root.absoluteFile.toURI().toASCIIString().let { if (it.endsWith("/")) it else "$it/" }
+        writer.write("\"originalUriBaseIds\": {\"$SRC_ROOT\": {\"uri\": ${uri.toJson()}}}, ")
+    }
+
+    //只保留 RFC 3986 的 unreserved 字符，其余按 utf8 字节编码
+    private fun String.encodeSegment(): String {
+        val builder = StringBuilder(length)
+        toByteArray(Charsets.UTF_8).forEach {
+            val c = (it.toInt() and 0xff).toChar()
+            if (c in 'a'..'z' || c in 'A'..'Z' || c in '0'..'9' || c in "-._~") {
+                builder.append(c)
+            } else {
+                builder.append('%').append(String.format("%02X", it.toInt() and 0xff))
+            }
+        }
+        return builder.toString()
+    }
+
+    private fun levelOf(record: ReportRecord): String {
+        return when {
+            record.isError -> "error"
+            record.severity == "Warning" -> "warning"
+            else -> "note"
+        }
+    }
+
+    private fun String.toJson(): String {
+        val builder = StringBuilder(length + 2)
+        builder.append('"')
+        forEach {
+            when {
+                it == '"' -> builder.append("\\\"")
+                it == '\\' -> builder.append("\\\\")
+                it == '\n' -> builder.append("\\n")
+                it == '\r' -> builder.append("\\r")
+                it == '\t' -> builder.append("\\t")
+                it < ' ' -> builder.append(String.format("\\u%04x", it.toInt()))
+                else -> builder.append(it)
+            }
+        }
+        builder.append('"')
+        return builder.toString()
+    }
+
+    companion object {
+        private const val SRC_ROOT = "%SRCROOT%"
+    }
+}
+
+/**
+ * 紧凑的二进制结果，CI 读取时不需要再解析 xml，与 buildSrc 中的 LintResultBinary 格式一致：
+ *
+ * 文件头为 "ELRB" + 版本号 1 个字节；每条记录为 varint 长度 + 内容，
+ * 内容依次为 id、severity、category、priority、message、file、line、column，
+ * 字符串为 varint 字节数 + utf8，数字为 varint，行列从 1 开始，0 表示未知；
+ * 以长度 0 结束，随后写入记录总数用于校验文件是否完整
+ */
+class BinaryStreamingReportWriter(private val output: OutputStream) : StreamingReportWriter {
+    private val buffer = ByteArrayOutputStream(256)
+    private var count = 0
+
+    override fun begin() {
+        output.write(MAGIC)
+        output.write(VERSION)
+    }
+
+    override fun write(record: ReportRecord, issue: Issue) {
+        buffer.reset()
+        buffer.writeString(record.id)
+        buffer.writeString(record.severity)
+        buffer.writeString(record.category)
+        buffer.writeVarInt(record.priority.coerceAtLeast(0))
+        buffer.writeString(record.message)
+        buffer.writeString(record.file)
+        buffer.writeVarInt(record.line.coerceAtLeast(0))
+        buffer.writeVarInt(record.column.coerceAtLeast(0))
+        output.writeVarInt(buffer.size())
+        buffer.writeTo(output)
+        count++
+    }
+
+    override fun end() {
+        output.writeVarInt(0)
+        output.writeVarInt(count)
+        output.flush()
+    }
+
+    private fun OutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeVarInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun OutputStream.writeVarInt(value: Int) {
+        var v = value
+        while (v and 0x7F.inv() != 0) {
+            write((v and 0x7F) or 0x80)
+            v = v ushr 7
+        }
+        write(v)
+    }
+
+    companion object {
+        private val MAGIC = "ELRB".toByteArray(Charsets.US_ASCII)
+        private const val VERSION = 1
+    }
+}
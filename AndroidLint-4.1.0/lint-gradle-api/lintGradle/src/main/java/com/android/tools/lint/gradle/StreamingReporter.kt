@@ -0,0 +1,95 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.LintCliClient
+import com.android.tools.lint.LintStats
+import com.android.tools.lint.Reporter
+import com.android.tools.lint.Warning
+import com.android.tools.lint.detector.api.Issue
+import java.io.BufferedOutputStream
+import java.io.File
+import java.io.OutputStream
+
+/**
+ * 包装 lint 原生的 reporter：warning 数量不超过 [threshold] 时交给 [delegate] 输出完整报告，
+ * 超过后改为逐条转换成 [ReportRecord]，经 [ExternalRecordSorter] 排序后由 [StreamingReportWriter] 增量写出。
+ *
+ * lint 原生的 html/xml reporter 会把整份报告（包括每个文件的源码片段）拼在内存里，
+ * 十万级 warning 时堆内存会出现 GB 级的峰值；流式输出时内存中最多只保留 [SORT_BUFFER_SIZE] 条记录
+ */
+class StreamingReporter(
+    client: LintCliClient,
+    output: File,
+    private val delegate: Reporter?,
+    private val threshold: Int,
+    private val writerFactory: (OutputStream, String) -> StreamingReportWriter
+) : Reporter(client, output) {
+
+    override fun write(stats: LintStats, issues: List<Warning>) {
+        if (delegate != null && issues.size <= threshold) {
+            delegate.isDisplayEmpty = isDisplayEmpty
+            delegate.write(stats, issues)
+            return
+        }
+        val output = output ?: return
+        "${issues.size} warnings, streaming to ${output.absolutePath}".log(TAG)
+        //id -> issue，summary 与 explanation 在写出时从这里查找
+        val issueById = HashMap<String, Issue>()
+        ExternalRecordSorter(SORT_BUFFER_SIZE, output.parentFile).use { sorter ->
+            issues.forEach {
+                issueById.putIfAbsent(it.issue.id, it.issue)
+                sorter.add(ReportRecord.from(it))
+            }
+            BufferedOutputStream(output.outputStream()).use { stream ->
+                val reportWriter = writerFactory(stream, client.getClientRevision() ?: "")
+                reportWriter.begin()
+                sorter.sorted().forEach { reportWriter.write(it, issueById.getValue(it.id)) }
+                reportWriter.end()
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "StreamingReporter"
+
+        //-PeaseLintStreamingThreshold=20000 warning 数量超过该值时改为流式输出
+        const val PROPERTY_THRESHOLD = "easeLintStreamingThreshold"
+
+        //-PreportFormats=xml,html,sarif,bin 需要输出的报告格式
+        const val PROPERTY_REPORT_FORMATS = "reportFormats"
+
+        const val DEFAULT_THRESHOLD = 20000
+
+        //外部排序时内存中保留的最大记录数
+        private const val SORT_BUFFER_SIZE = 10000
+
+        fun xml(client: LintCliClient, output: File, delegate: Reporter, threshold: Int): Reporter {
+            return StreamingReporter(client, output, delegate, threshold) { stream, version ->
+                XmlStreamingReportWriter(stream.writer(Charsets.UTF_8), version)
+            }
+        }
+
+        fun html(client: LintCliClient, output: File, delegate: Reporter, threshold: Int): Reporter {
+            return StreamingReporter(client, output, delegate, threshold) { stream, _ ->
+                HtmlStreamingReportWriter(stream.writer(Charsets.UTF_8))
+            }
+        }
+
+        /**
+         * lint 27.1 没有 SARIF reporter，始终流式输出；[srcRoot] 下的文件位置相对它输出
+         */
+        fun sarif(client: LintCliClient, output: File, srcRoot: File?): Reporter {
+            return StreamingReporter(client, output, null, 0) { stream, version ->
+                SarifStreamingReportWriter(stream.writer(Charsets.UTF_8), version, srcRoot)
+            }
+        }
+
+        /**
+         * 紧凑的二进制结果，格式见 [BinaryStreamingReportWriter]，始终流式输出
+         */
+        fun binary(client: LintCliClient, output: File): Reporter {
+            return StreamingReporter(client, output, null, 0) { stream, _ ->
+                BinaryStreamingReportWriter(stream)
+            }
+        }
+    }
+}
@@ -102,6 +102,7 @@ fun syncTo(
         flags.severityOverrides = emptyMap()
     }
     if (report || flags.isFatalOnly && options.abortOnError) {
+        val streamingThreshold = streamingThreshold(project)
         if (options.textReport || flags.isFatalOnly) {
             var output = options.textOutput
             if (output == null) {
@@ -150,7 +151,14 @@ fun syncTo(
             }
             output = validateOutputFile(output!!)
             try {
-                flags.reporters.add(Reporter.createHtmlReporter(client, output, flags))
+                flags.reporters.add(
+                    StreamingReporter.html(
+                        client,
+                        output,
+                        Reporter.createHtmlReporter(client, output, flags),
+                        streamingThreshold
+                    )
+                )
             } catch (e: IOException) {
                 throw GradleException("HTML invalid argument.", e)
             }
@@ -172,14 +180,28 @@ fun syncTo(
             try {
                 flags.reporters
                     .add(
-                        Reporter.createXmlReporter(
-                            client, output, false, flags.isIncludeXmlFixes
+                        StreamingReporter.xml(
+                            client,
+                            output,
+                            Reporter.createXmlReporter(
+                                client, output, false, flags.isIncludeXmlFixes
+                            ),
+                            streamingThreshold
                         )
                     )
             } catch (e: IOException) {
                 throw GradleException("XML invalid argument.", e)
             }
         }
+        val reportFormats = reportFormats(project)
+        if (reportFormats.contains(SARIF_FORMAT) && !flags.isFatalOnly) {
+            val output = siblingOfXmlOutput(options, project, variantName, reportsDir, ".sarif")
+            flags.reporters.add(StreamingReporter.sarif(client, output, project?.rootDir))
+        }
+        if (reportFormats.contains(BINARY_FORMAT) && !flags.isFatalOnly) {
+            val output = siblingOfXmlOutput(options, project, variantName, reportsDir, ".bin")
+            flags.reporters.add(StreamingReporter.binary(client, output))
+        }
     }
 }
 
@@ -198,6 +220,46 @@ private fun getSeverity(
     }
 }
 
+private const val SARIF_FORMAT = "sarif"
+
+private const val BINARY_FORMAT = "bin"
+
+//未指定 -PreportFormats 时输出的格式，与 buildSrc 中 LintSlot 的默认值一致
+private val DEFAULT_REPORT_FORMATS = listOf("xml", "html", SARIF_FORMAT, BINARY_FORMAT)
+
+/**
+ * 与 xml 报告放在同一目录，只替换扩展名
+ */
+private fun siblingOfXmlOutput(
+    options: LintModelLintOptions,
+    project: Project?,
+    variantName: String?,
+    reportsDir: File?,
+    extension: String
+): File {
+    val xmlOutput = options.xmlOutput
+    var output = if (xmlOutput != null) {
+        File(xmlOutput.parentFile, xmlOutput.nameWithoutExtension + extension)
+    } else {
+        createOutputPath(project, variantName, extension, reportsDir, false)
+    }
+    if (!output.isAbsolute && project != null) {
+        output = project.file(output.path)
+    }
+    return validateOutputFile(output)
+}
+
+private fun streamingThreshold(project: Project?): Int {
+    return project?.findProperty(StreamingReporter.PROPERTY_THRESHOLD)?.toString()?.toIntOrNull()
+        ?: StreamingReporter.DEFAULT_THRESHOLD
+}
+
+private fun reportFormats(project: Project?): List<String> {
+    val formats = project?.findProperty(StreamingReporter.PROPERTY_REPORT_FORMATS)
+        ?: return DEFAULT_REPORT_FORMATS
+    return formats.toString().split(",").map { it.trim().toLowerCase() }
+}
+
 private fun isStdOut(output: File): Boolean = Reporter.STDOUT == output.path
 
 private fun isStdErr(output: File): Boolean = Reporter.STDERR == output.path
@@ -0,0 +1,62 @@
+package com.android.tools.lint.gradle
+
+import com.android.SdkConstants
+import com.android.resources.ResourceFolderType
+import com.android.tools.lint.client.api.IssueRegistry
+import com.android.tools.lint.detector.api.Scope
+import java.io.File
+import java.util.*
+
+/**
+ * 根据目标文件的类型推断最小的扫描范围，设置到 LintRequest 上后，
+ * 只改动了 kt 文件时 lint 不再建立资源仓库、解析合并后的 manifest、扫描 class 文件。
+ * 需要更大范围的 issue（比如同时需要 java 与资源文件）会被 lint 跳过，与 IDE 中单文件扫描的行为一致，
+ * 所以默认关闭，通过 -PeaseLintNarrowScope=true 开启，开启后会输出被跳过的 issue
+ */
+object TargetScope {
+    const val PROPERTY_NARROW_SCOPE = "easeLintNarrowScope"
+
+    /**
+     * @return 存在无法识别的文件类型时返回 null，保持 lint 默认的扫描范围
+     */
+    @JvmStatic
+    fun infer(files: List<File>): EnumSet<Scope>? {
+        if (files.isEmpty()) return null
+        val scope = EnumSet.noneOf(Scope::class.java)
+        files.forEach { file ->
+            val name = file.name
+            val parent = file.parentFile?.name.orEmpty()
+            when {
+                name == SdkConstants.ANDROID_MANIFEST_XML -> scope.add(Scope.MANIFEST)
+                name.endsWith(SdkConstants.DOT_JAVA) || name.endsWith(SdkConstants.DOT_KT) ->
+                    scope.add(Scope.JAVA_FILE)
+                name.endsWith(SdkConstants.DOT_GRADLE) || name.endsWith(".gradle.kts") ->
+                    scope.add(Scope.GRADLE_FILE)
+                name.endsWith(SdkConstants.DOT_PROPERTIES) -> scope.add(Scope.PROPERTY_FILE)
+                name.endsWith(".pro") || name == SdkConstants.FN_PROJECT_PROGUARD_FILE ||
+                        name == SdkConstants.OLD_PROGUARD_FILE -> scope.add(Scope.PROGUARD_FILE)
+                //res/<type> 下的 xml 与图片，其他目录下的 xml（lint.xml、assets 等）保持默认范围
+                !isResourceFile(file) -> return null
+                name.endsWith(SdkConstants.DOT_XML) -> scope.add(Scope.RESOURCE_FILE)
+                parent.startsWith(SdkConstants.FD_RES_DRAWABLE) || parent.startsWith(SdkConstants.FD_RES_MIPMAP) ->
+                    scope.add(Scope.BINARY_RESOURCE_FILE)
+                else -> return null
+            }
+        }
+        return scope
+    }
+
+    /**
+     * [registry] 中在 [scope] 下会被 lint 跳过的 issue
+     */
+    @JvmStatic
+    fun skippedIssues(registry: IssueRegistry, scope: EnumSet<Scope>): List<String> {
+        return registry.issues.filter { !it.implementation.isAdequate(scope) }.map { it.id }
+    }
+
+    private fun isResourceFile(file: File): Boolean {
+        val folder = file.parentFile ?: return false
+        return folder.parentFile?.name == SdkConstants.FD_RES &&
+                ResourceFolderType.getFolderType(folder.name) != null
+    }
+}
@@ -0,0 +1,114 @@
+package com.android.tools.lint.gradle
+
+import com.android.tools.lint.Warning
+
+/**
+ * mergeWarnings 使用的去重表，代替 issue -> message -> line -> offset -> fileName 五层嵌套的 map。
+ *
+ * 开放寻址 + 线性探测，key 由 issue、message、line、offset、fileName 组成，
+ * 与原来的嵌套 map 判重规则一致；hash 与 fileName 存在平行数组里，不为每个 warning 额外创建 map，
+ * line 与 offset 也不再装箱。
+ */
+internal class WarningMergeTable(expectedSize: Int) {
+    private var warnings: Array<Warning?>
+    private var fileNames: Array<String?>
+    private var hashes: IntArray
+    private var mask: Int
+    private var size = 0
+
+    init {
+        var capacity = MIN_CAPACITY
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity = capacity shl 1
+        }
+        warnings = arrayOfNulls(capacity)
+        fileNames = arrayOfNulls(capacity)
+        hashes = IntArray(capacity)
+        mask = capacity - 1
+    }
+
+    /**
+     * 表中已经存在相同的 warning 时返回已存在的那个，否则放入 [warning] 并返回 null
+     */
+    fun putIfAbsent(warning: Warning): Warning? {
+        val fileName = fileNameOf(warning)
+        val hash = hashOf(warning, fileName)
+        var index = hash and mask
+        while (true) {
+            val existing = warnings[index] ?: break
+            if (hashes[index] == hash && isSame(existing, fileNames[index], warning, fileName)) {
+                return existing
+            }
+            index = (index + 1) and mask
+        }
+        warnings[index] = warning
+        fileNames[index] = fileName
+        hashes[index] = hash
+        if (++size > (mask + 1) * LOAD_FACTOR) {
+            resize()
+        }
+        return null
+    }
+
+    private fun resize() {
+        val oldWarnings = warnings
+        val oldFileNames = fileNames
+        val oldHashes = hashes
+        val capacity = oldWarnings.size shl 1
+        warnings = arrayOfNulls(capacity)
+        fileNames = arrayOfNulls(capacity)
+        hashes = IntArray(capacity)
+        mask = capacity - 1
+        for (i in oldWarnings.indices) {
+            val warning = oldWarnings[i] ?: continue
+            var index = oldHashes[i] and mask
+            while (warnings[index] != null) {
+                index = (index + 1) and mask
+            }
+            warnings[index] = warning
+            fileNames[index] = oldFileNames[i]
+            hashes[index] = oldHashes[i]
+        }
+    }
+
+    private fun isSame(
+        existing: Warning,
+        existingFileName: String?,
+        warning: Warning,
+        fileName: String
+    ): Boolean {
+        return existing.line == warning.line &&
+                existing.offset == warning.offset &&
+                existing.issue == warning.issue &&
+                existing.message == warning.message &&
+                existingFileName == fileName
+    }
+
+    private fun hashOf(warning: Warning, fileName: String): Int {
+        var h = warning.issue.hashCode()
+        h = 31 * h + warning.message.hashCode()
+        h = 31 * h + warning.line
+        h = 31 * h + warning.offset
+        h = 31 * h + fileName.hashCode()
+        //打散高位，线性探测对低位聚集比较敏感
+        return h xor (h ushr 16)
+    }
+
+    companion object {
+        private const val MIN_CAPACITY = 16
+        private const val LOAD_FACTOR = 0.5
+
+        /**
+         * 与原实现一致，只取父目录名 + 文件名，不同变种的源码目录下同名文件视为同一个
+         */
+        fun fileNameOf(warning: Warning): String {
+            val file = warning.file ?: return "<unknown>"
+            val parent = file.parentFile
+            return if (parent != null) {
+                parent.name + "/" + file.name
+            } else {
+                file.name
+            }
+        }
+    }
+}
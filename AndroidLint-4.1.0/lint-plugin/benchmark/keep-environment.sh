@@ -0,0 +1,52 @@
+#!/usr/bin/env bash
+# easeLintKeepLintEnvironment 的基准测试：对比构建之间保留与释放 UAST 环境时，easeLint 的启动耗时与整次构建耗时。
+# 每组参数先停止 daemon，再在同一个 daemon 中连续执行 RUNS 次 easeLint，第 1 次为冷启动，单独列出，
+# 其余取 EaseLintReflectiveLintRunner 输出的 startup/analyze cost 与整次构建耗时的中位数。
+# 每次构建前 touch 目标文件并关闭结果缓存，保证 lint 任务真正执行。
+# 用法：./benchmark/keep-environment.sh [RUNS=6]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${1:-6}
+TARGET="$PWD/subModule/src/main/java/com/practice/temp/benchmark/KeepEnvironment.kt"
+
+trap 'rm -rf "$(dirname "$TARGET")"' EXIT
+mkdir -p "$(dirname "$TARGET")"
+cat >"$TARGET" <<KT
+package com.practice.temp.benchmark
+
+import android.util.Log
+
+class KeepEnvironment {
+    fun run(value: String) = Log.d("KeepEnvironment", value)
+}
+KT
+
+median() {
+  sort -n | awk '{ a[NR] = $1 } END { print (NR == 0) ? "-" : a[int((NR + 1) / 2)] }'
+}
+
+now_ms() {
+  date +%s%3N
+}
+
+printf '%-6s %-16s %-14s %-14s %-14s\n' keep first_startup_ms startup_ms analyze_ms build_ms
+for keep in false true; do
+  ./gradlew -q --stop >/dev/null
+  log=$(mktemp)
+  builds=$(mktemp)
+  for run in $(seq 1 "$RUNS"); do
+    touch "$TARGET"
+    start=$(now_ms)
+    ./gradlew :subModule:easeLint -PtargetFiles="$TARGET" -PcompareCommitId=HEAD \
+      -PeaseLintKeepLintEnvironment="$keep" -PeaseLintResultCache=false >"$log.$run"
+    if [ "$run" -gt 1 ]; then echo $(($(now_ms) - start)) >>"$builds"; fi
+  done
+  first=$(sed -n 's/.*startup cost \([0-9]*\)ms.*/\1/p' "$log.1" | head -1)
+  for run in $(seq 2 "$RUNS"); do cat "$log.$run"; done >"$log"
+  startup=$(sed -n 's/.*startup cost \([0-9]*\)ms.*/\1/p' "$log" | median)
+  analyze=$(sed -n 's/.*analyze cost \([0-9]*\)ms.*/\1/p' "$log" | median)
+  build=$(median <"$builds")
+  printf '%-6s %-16s %-14s %-14s %-14s\n' "$keep" "${first:--}" "$startup" "$analyze" "$build"
+  rm -f "$log" "$log".* "$builds"
+done
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# easeLintSubsetOnly 的基准测试：对比开启与关闭裁剪时，easeLint 的耗时随目标文件数量（diff 大小）与 module 大小的变化。
+# 在 subModule 中生成 MODULE_FILES 个临时 kt 文件作为 module 的主体，结束时删除；
+# 每组参数在同一个 daemon 中重复 RUNS 次，取 EaseLintReflectiveLintRunner 输出的 startup/analyze cost 的中位数。
+# 与 HEAD 对比 git diff，工作区中没有其他改动时扫描目标只有 -PtargetFiles 指定的文件。
+# 用法：./benchmark/subset-mode.sh [MODULE_FILES=500] [RUNS=3]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+MODULE_FILES=${1:-500}
+RUNS=${2:-3}
+GEN_DIR="$PWD/subModule/src/main/java/com/practice/temp/benchmark"
+
+trap 'rm -rf "$GEN_DIR"' EXIT
+mkdir -p "$GEN_DIR"
+for i in $(seq 1 "$MODULE_FILES"); do
+  cat >"$GEN_DIR/Generated$i.kt" <<EOF
+package com.practice.temp.benchmark
+
+import android.util.Log
+
+class Generated$i {
+    fun run(value: String): Int {
+        Log.d("Generated$i", value)
+        return value.length + $i
+    }
+}
+EOF
+done
+
+# 前 n 个生成文件的绝对路径，逗号分隔
+targets() {
+  seq 1 "$1" | sed "s|.*|$GEN_DIR/Generated&.kt|" | paste -sd, -
+}
+
+median() {
+  sort -n | awk '{ a[NR] = $1 } END { print (NR == 0) ? "-" : a[int((NR + 1) / 2)] }'
+}
+
+# 预热：编译 subModule 并创建 lint 的 classloader
+./gradlew -q :subModule:easeLint -PtargetFiles="$(targets 1)" -PcompareCommitId=HEAD \
+  -PeaseLintResultCache=false >/dev/null
+
+printf '%-12s %-8s %-8s %-14s %-14s\n' module targets subset startup_ms analyze_ms
+for diff in $(printf '%s\n' 1 10 100 "$MODULE_FILES" | sort -nu); do
+  [ "$diff" -gt "$MODULE_FILES" ] && continue
+  for subset in false true; do
+    log=$(mktemp)
+    for _ in $(seq 1 "$RUNS"); do
+      ./gradlew :subModule:easeLint -PtargetFiles="$(targets "$diff")" -PcompareCommitId=HEAD \
+        -PeaseLintSubsetOnly="$subset" -PeaseLintResultCache=false >>"$log"
+    done
+    startup=$(sed -n 's/.*startup cost \([0-9]*\)ms.*/\1/p' "$log" | median)
+    analyze=$(sed -n 's/.*analyze cost \([0-9]*\)ms.*/\1/p' "$log" | median)
+    printf '%-12s %-8s %-8s %-14s %-14s\n' "$MODULE_FILES" "$diff" "$subset" "$startup" "$analyze"
+    rm -f "$log"
+  done
+done
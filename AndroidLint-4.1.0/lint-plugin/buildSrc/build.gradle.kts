@@ -38,5 +38,18 @@ repositories {
 dependencies {
     // 无法引用 buildSrc 内的类
     implementation("com.android.tools.build:gradle:4.1.0")
+    // 进程内 git diff
+    implementation("org.eclipse.jgit:org.eclipse.jgit:5.13.1.202206130422-r")
 }
 
+//WhiteListMatcher 的基准测试，不参与插件编译：./gradlew -p buildSrc whiteListMatcherBenchmark
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+    runtimeClasspath += sourceSets["main"].output + sourceSets["main"].runtimeClasspath
+}
+
+tasks.register("whiteListMatcherBenchmark", JavaExec::class) {
+    description = "Compare contains/endsWith whitelist matching with WhiteListMatcher"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.buildsrc.easelint.lint.utils.WhiteListMatcherBenchmarkKt")
+}
@@ -0,0 +1,59 @@
+package com.buildsrc.easelint.lint.utils
+
+import java.io.File
+
+/**
+ * 白名单匹配的基准测试：原来逐条 contains/endsWith 的方式与 WhiteListMatcher 对比，
+ * 生成的白名单都落在完整的目录边界上，两者命中的文件数量必须一致。
+ *
+ * 执行：./gradlew -p buildSrc whiteListMatcherBenchmark --args="2000 50000"
+ * 参数依次为文件白名单条数与待匹配的文件数，后缀白名单固定为 [SUFFIX_COUNT] 条
+ */
+fun main(args: Array<String>) {
+    val ruleCount = args.getOrNull(0)?.toIntOrNull() ?: 2000
+    val pathCount = args.getOrNull(1)?.toIntOrNull() ?: 50000
+    val separator = File.separator
+    val fileWhiteList = (0 until ruleCount).map {
+        listOf("module${it % 20}", "src", "main", "java", "com", "pkg%05d".format(it)).joinToString(separator)
+    }
+    val suffixWhiteList = (0 until SUFFIX_COUNT).map { "Generated$it.kt" }
+    //一半的文件落在白名单目录中，另一半不命中
+    val paths = (0 until pathCount).map {
+        val pkg = "pkg%05d".format(it % (ruleCount * 2))
+        val name = if (it % 50 == 0) "Generated${it % SUFFIX_COUNT}.kt" else "File$it.kt"
+        listOf("", "root", "project", "module${it % 20}", "src", "main", "java", "com", pkg, name)
+            .joinToString(separator)
+    }
+
+    val naive = { path: String ->
+        fileWhiteList.any { path.contains(it) } || suffixWhiteList.any { path.endsWith(it) }
+    }
+    val matcher = WhiteListMatcher(fileWhiteList, suffixWhiteList)
+    val naiveCount = paths.count(naive)
+    val matcherCount = paths.count { matcher.matches(it) }
+    check(naiveCount == matcherCount) { "matched count differs: naive=$naiveCount matcher=$matcherCount" }
+
+    repeat(WARMUP) {
+        paths.count(naive)
+        paths.count { matcher.matches(it) }
+    }
+    val naiveTime = median { paths.count(naive) }
+    val compileTime = median { WhiteListMatcher(fileWhiteList, suffixWhiteList) }
+    val matcherTime = median { paths.count { matcher.matches(it) } }
+    println("rules:$ruleCount+$SUFFIX_COUNT paths:$pathCount matched:$matcherCount")
+    println("contains/endsWith:${naiveTime}ms WhiteListMatcher:${matcherTime}ms compile:${compileTime}ms (median of $ROUNDS)")
+}
+
+private const val SUFFIX_COUNT = 20
+private const val WARMUP = 5
+private const val ROUNDS = 10
+
+private fun median(block: () -> Unit): Long {
+    val times = LongArray(ROUNDS) {
+        val start = System.nanoTime()
+        block()
+        (System.nanoTime() - start) / 1_000_000
+    }
+    times.sort()
+    return times[ROUNDS / 2]
+}
@@ -0,0 +1,32 @@
+package com.buildsrc.easelint.lint.git
+
+import com.buildsrc.easelint.lint.extensions.GitDiffConfig
+import com.buildsrc.easelint.lint.utils.LineRanges
+import java.io.File
+
+/**
+ * 差异文件的提供者，负责按 [GitDiffConfig] 找出需要扫描的文件。
+ * 返回的路径统一为当前系统分隔符的文件绝对路径，且已去除删除类型的改动
+ * （与 git diff --diff-filter=ACMRTUXB 保持一致）。
+ */
+interface GitDiffProvider {
+
+    /**
+     * @param rootDir gradle 根项目目录，以此向上查找 git 仓库
+     * @param config 对比的分支或 commitId
+     */
+    fun changedFiles(rootDir: File, config: GitDiffConfig): Sequence<String>
+
+    /**
+     * 对比提交与工作区之间改动过的行，行号对应工作区中的文件内容。
+     * 只删除了内容的位置记为删除点前后两行
+     *
+     * @param files 只计算这些文件，为 [changedFiles] 返回的绝对路径
+     * @return key 为文件绝对路径
+     */
+    fun changedLines(
+        rootDir: File,
+        config: GitDiffConfig,
+        files: Collection<String>
+    ): Map<String, LineRanges>
+}
@@ -0,0 +1,68 @@
+package com.buildsrc.easelint.lint.git
+
+import com.buildsrc.easelint.lint.extensions.GitDiffConfig
+import com.buildsrc.easelint.lint.utils.LineRanges
+import com.buildsrc.easelint.lint.utils.PathTrie
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import java.io.File
+
+/**
+ * 构建级别共享的 git diff 结果。
+ * 整个构建只对根目录做一次 diff，各 module 通过 [filesUnder] 只取自己目录下的差异文件，
+ * diff 的开销与 module 数量无关。构建结束后由 Gradle 回收。
+ * 改动行只在开启 changedLinesOnly 时通过 [linesUnder] 第一次查询才计算。
+ */
+abstract class GitDiffService : BuildService<GitDiffService.Params> {
+
+    interface Params : BuildServiceParameters {
+        val rootDir: DirectoryProperty
+        val compareBranch: Property<String>
+        val compareCommitId: Property<String>
+        val engine: Property<String>
+    }
+
+    private val config: GitDiffConfig
+        get() = GitDiffConfig(parameters.compareBranch.get(), parameters.compareCommitId.get())
+
+    private val changedFiles: PathTrie by lazy {
+        PathTrie().apply {
+            addAll(
+                GitDiffHelper.diff(
+                    parameters.rootDir.get().asFile,
+                    config,
+                    parameters.engine.get()
+                )
+            )
+        }
+    }
+
+    //整个仓库差异文件的改动行，key 为文件绝对路径
+    private val changedLines: Map<String, LineRanges> by lazy {
+        GitDiffHelper.diffLines(
+            parameters.rootDir.get().asFile,
+            config,
+            parameters.engine.get(),
+            changedFiles.filesUnder(parameters.rootDir.get().asFile)
+        )
+    }
+
+    /**
+     * @param projectDir module 目录
+     * @return 该目录下的差异文件绝对路径
+     */
+    fun filesUnder(projectDir: File): List<String> {
+        return changedFiles.filesUnder(projectDir)
+    }
+
+    /**
+     * @param projectDir module 目录
+     * @return 该目录下差异文件的改动行
+     */
+    fun linesUnder(projectDir: File): Map<String, LineRanges> {
+        val lines = changedLines
+        return filesUnder(projectDir).mapNotNull { path -> lines[path]?.let { path to it } }.toMap()
+    }
+}
@@ -0,0 +1,127 @@
+package com.buildsrc.easelint.lint.git
+
+import com.buildsrc.easelint.lint.extensions.GitDiffConfig
+import com.buildsrc.easelint.lint.utils.LineRanges
+import com.buildsrc.easelint.lint.task.LintException
+import com.buildsrc.easelint.lint.utils.log
+import java.io.File
+
+/**
+ * 通过命令行调用 git 获取差异文件，作为 [JGitDiffProvider] 不可用时的兜底方案
+ */
+class ShellGitDiffProvider : GitDiffProvider {
+
+    override fun changedFiles(rootDir: File, config: GitDiffConfig): Sequence<String> {
+        //=============git diff指令开始==============
+        //step1.使用配置的commitId，未配置则先查询指定分支最新的commitId
+        val commitId = resolveCompareCommit(rootDir, config)
+        "finally commitId $commitId".log("ShellGitDiffProvider")
+        //step2.找出和指定commitId之间的差异文件
+        val pathList = ArrayList<String>()
+        pathList.addAll(
+            exec(rootDir, "git", "diff", commitId, "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
+        )
+        /*
+        step3.
+        上面的git diff命令只能比较两次提交记录间的差异，适合在CI上执行。
+        但是也需要本地执行，因此需要加上对比工作区和上一次提交之间的差异，
+        寻找未提交的改动新增文件
+         */
+        pathList.addAll(
+            exec(rootDir, "git", "diff", "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
+        )
+        //=============git diff指令结束==============
+        return pathList.asSequence()
+            .filter { it.isNotEmpty() }
+            .map { toAbsolutePath(rootDir, it) }
+    }
+
+    /**
+     * 使用 git diff -U0 对比提交记录与工作区，从每个 hunk 头 "@@ -a,b +c,d @@" 中取出新文件的行区间
+     */
+    override fun changedLines(
+        rootDir: File,
+        config: GitDiffConfig,
+        files: Collection<String>
+    ): Map<String, LineRanges> {
+        val commitId = resolveCompareCommit(rootDir, config).ifEmpty { "HEAD" }
+        val output = exec(
+            rootDir, "git", "diff", "-U0", "--no-color", "--no-ext-diff",
+            "--diff-filter=ACMRTUXB", commitId
+        )
+        val targets = files.toHashSet()
+        val ranges = HashMap<String, MutableList<IntRange>>()
+        var current: MutableList<IntRange>? = null
+        //"diff --git" 到第一个 hunk 之间为文件头，新增的内容行也可能以 "+++ " 开头
+        var inHeader = false
+        output.forEach { line ->
+            when {
+                line.startsWith("diff --git ") -> {
+                    inHeader = true
+                    current = null
+                }
+                inHeader && line.startsWith("+++ ") -> {
+                    val path = line.substring(4).removePrefix("b/")
+                    val absolutePath = toAbsolutePath(rootDir, path)
+                    current = if (path != "/dev/null" && targets.contains(absolutePath)) {
+                        ranges.getOrPut(absolutePath) { ArrayList() }
+                    } else {
+                        null
+                    }
+                }
+                line.startsWith("@@") -> {
+                    inHeader = false
+                    val hunk = HUNK_HEADER.find(line) ?: return@forEach
+                    val start = hunk.groupValues[1].toInt()
+                    val count = hunk.groupValues[2].ifEmpty { "1" }.toInt()
+                    //count 为 0 时 start 是删除点的前一行
+                    current?.add(
+                        if (count > 0) start until start + count else start.coerceAtLeast(1)..(start + 1)
+                    )
+                }
+            }
+        }
+        return ranges.mapValues { LineRanges.of(it.value) }
+    }
+
+    private fun resolveCompareCommit(rootDir: File, config: GitDiffConfig): String {
+        return config.compareCommitId.ifEmpty {
+            //待对比分支，未指定则默认使用远程master分支
+            val branch = config.compareBranch.ifEmpty { "origin" }
+            //查询指定分支上最新的commitId
+            exec(rootDir, "git", "log", branch, "--pretty=%h", "--max-count=1")
+                .firstOrNull() ?: ""
+        }
+    }
+
+    /**
+     * 从git指令中获取到的文件路径是相对路径，
+     * 路径开头可能和从project.rootDir获取到
+     * 的根目录绝对路径有重复。因此通过项目名称来
+     * 来截取相对路径，去掉多余路径，避免Lint加载
+     * 文件失败。且git diff获取到的文件路径分隔符
+     * 为/，统一替换成当前系统分隔符
+     */
+    private fun toAbsolutePath(rootDir: File, path: String): String {
+        //截取项目绝对路径的最后一个文件夹名作为项目名称
+        val projectName = rootDir.absolutePath.substringAfterLast(File.separator)
+        return "$rootDir${path.substringAfter(projectName).replace("/", File.separator)}"
+    }
+
+    private fun exec(dir: File, vararg command: String): List<String> {
+        val process = ProcessBuilder(*command)
+            .directory(dir)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start()
+        val lines = process.inputStream.bufferedReader().use { it.readLines() }
+        val exitCode = process.waitFor()
+        if (exitCode != 0) {
+            throw LintException("${command.joinToString(" ")} finished with exit code $exitCode")
+        }
+        return lines
+    }
+
+    companion object {
+        private val HUNK_HEADER = Regex("^@@ -\\d+(?:,\\d+)? \\+(\\d+)(?:,(\\d+))? @@")
+    }
+}
@@ -5,6 +5,7 @@ import com.android.build.api.variant.impl.VariantPropertiesImpl
 import com.android.build.gradle.internal.VariantManager
 import com.android.build.gradle.internal.tasks.factory.TaskFactoryImpl
 import com.android.build.gradle.internal.variant.ComponentInfo
+import com.buildsrc.easelint.lint.task.AggregateEaseLintResultsTask
 import com.buildsrc.easelint.lint.task.EaseLintPerVariantTask
 import com.buildsrc.easelint.lint.task.PrepareEaseLintTask
 import com.buildsrc.easelint.lint.task.TreatEaseLintResultTask
@@ -49,6 +50,11 @@ class EaseLintTaskHelper {
         ).get()
         task.dependsOn(prepareEaseLintTask)
         task.finalizedBy(treatEaseLintResultTask)
+        project.rootProject.tasks.named(AggregateEaseLintResultsTask.TASK_NAME) {
+            mustRunAfter(treatEaseLintResultTask)
+        }
+        //在执行阶段判断，prepareEaseLint 中对 LintSlot 的修改同样生效，没有需要扫描的文件时不启动 lint
+        task.onlyIf { !LintSlot.finalTargets(project).isEmpty() }
     }
 
     class EaseLintCreationAction(
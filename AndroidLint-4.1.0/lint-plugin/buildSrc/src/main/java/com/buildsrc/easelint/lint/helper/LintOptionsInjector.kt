@@ -11,6 +11,9 @@ class LintOptionsInjector {
         private val TAG = LintOptionsInjector::class.java.simpleName
         const val XML_OUTPUT_RELATIVE_PATH = "build/easeLintReports/lint-results.xml"
         const val HTML_OUTPUT_RELATIVE_PATH = "build/easeLintReports/lint-results.html"
+        //lint-gradle 中按 xml 报告的路径替换扩展名输出
+        const val SARIF_OUTPUT_RELATIVE_PATH = "build/easeLintReports/lint-results.sarif"
+        const val BINARY_OUTPUT_RELATIVE_PATH = "build/easeLintReports/lint-results.bin"
         const val BASELINE_RELATIVE_PATH = "lint-baseline.xml"
     }
 
@@ -21,6 +24,9 @@ class LintOptionsInjector {
      */
     fun inject(project: Project, lintOptions: LintOptions) {
         lintOptions.apply {
+            val reportFormats = LintSlot.reportFormats(project)
+            xmlReport = reportFormats.contains("xml")
+            htmlReport = reportFormats.contains("html")
             xmlOutput = File(XML_OUTPUT_RELATIVE_PATH)//指定xml输出目录
             htmlOutput = File(HTML_OUTPUT_RELATIVE_PATH)//指定html输出目录
             isWarningsAsErrors = false//返回lint是否应将所有警告视为错误
@@ -31,6 +37,8 @@ class LintOptionsInjector {
 //            }
             disable(*LintSlot.disableIssues.toTypedArray())
             checkOnly(*LintSlot.checkOnlyIssues.toTypedArray())
+            // checkOnly 会关闭其余 issue，引用索引需要在每次扫描时更新
+            if (LintSlot.checkOnlyIssues.isNotEmpty()) checkOnly(LintSlot.REFERENCE_INDEX_ISSUE)
         }
     }
 
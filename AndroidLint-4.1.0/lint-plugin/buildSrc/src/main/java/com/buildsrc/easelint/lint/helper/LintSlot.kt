@@ -2,10 +2,13 @@ package com.buildsrc.easelint.lint.helper
 
 import com.buildsrc.easelint.lint.extensions.GitDiffConfig
 import com.buildsrc.easelint.lint.extensions.LintConfigExtension
+import com.buildsrc.easelint.lint.git.GitDiffHelper
 import com.buildsrc.easelint.lint.task.LintException
+import com.buildsrc.easelint.lint.utils.LineRanges
+import com.buildsrc.easelint.lint.utils.ReferenceIndex
+import com.buildsrc.easelint.lint.utils.WhiteListMatcher
 import com.buildsrc.easelint.lint.utils.log
 import org.gradle.api.Project
-import java.io.ByteArrayOutputStream
 import java.io.File
 import java.util.*
 
@@ -22,11 +25,28 @@ object LintSlot {
         SUFFIX_WHITE_LIST("suffixWhiteList"),
         COMPARE_BRANCH("compareBranch"),
         COMPARE_COMMIT_ID("compareCommitId"),
+        GIT_DIFF_ENGINE("gitDiffEngine"),
+        EXPAND_DEPENDENTS("expandDependents"),
+        CHANGED_LINES_ONLY("changedLinesOnly"),
+        REPORT_FORMATS("reportFormats"),
     }
 
     private const val PARAMS_TYPE_EXTENSION = "set extension params"
     private const val PARAMS_TYPE_TASK = "overwrite task params"
 
+    //默认输出的报告格式，可通过 -PreportFormats=xml,sarif 修改，html 报告在问题较多时很占内存，
+    //sarif 与 bin 供 CI 直接读取，不需要再解析 xml
+    private val DEFAULT_REPORT_FORMATS = listOf("xml", "html", "sarif", "bin")
+
+    //挂在 project extra 属性上的解析结果
+    private const val TARGET_RESOLUTION = "easeLintTargetResolution"
+
+    //挂在 rootProject extra 属性上的引用索引，所有 module 共用
+    private const val REFERENCE_INDEX = "easeLintReferenceIndex"
+
+    //lint-checks 中生成引用索引的 issue
+    const val REFERENCE_INDEX_ISSUE = "ReferenceIndexDetector"
+
     //扫描目标，统一为文件全路径
     private val targetFiles_: LinkedList<String> = LinkedList()
     val targetFiles = targetFiles_
@@ -47,9 +67,21 @@ object LintSlot {
     private val suffixWhiteList_: LinkedList<String> = LinkedList()
     val suffixWhiteList = suffixWhiteList_
 
+    //由两个白名单编译出的匹配器，白名单变化后重新编译
+    private var whiteListMatcher: WhiteListMatcher? = null
+
     //git筛选文件配置
     private var gitDiffConfig = GitDiffConfig()
 
+    //git diff 的实现方式，默认进程内的 jgit，可通过 -PgitDiffEngine=shell 切换为命令行
+    private var gitDiffEngine = GitDiffHelper.ENGINE_JGIT
+
+    //是否把引用了改动类的文件也加入扫描，依赖上一次扫描生成的引用索引，可通过 -PexpandDependents=true 开启
+    var expandDependents = false
+
+    //是否只报告改动过的行上的问题，未改动的行上已有的问题不再输出，可通过 -PchangedLinesOnly=true 开启
+    var changedLinesOnly = false
+
     /**
      * 设置在build.gradle中配置的extension参数
      *
@@ -105,6 +137,37 @@ object LintSlot {
         if (compareBranch.isNotEmpty() || compareCommitId.isNotEmpty()) {
             setGitDiffConfig(GitDiffConfig(compareBranch, compareCommitId), PARAMS_TYPE_TASK)
         }
+
+        val gitDiffEngine = getParamsString(project, TaskParams.GIT_DIFF_ENGINE.paramName)
+        //没有传参数时恢复默认值，避免沿用 daemon 中上一次构建的参数
+        this.gitDiffEngine = gitDiffEngine.ifEmpty { GitDiffHelper.ENGINE_JGIT }
+        if (gitDiffEngine.isNotEmpty()) {
+            "gitDiffEngine:$gitDiffEngine".log(PARAMS_TYPE_TASK)
+        }
+
+        val expandDependents = getParamsString(project, TaskParams.EXPAND_DEPENDENTS.paramName)
+        //没有传参数时恢复默认值，避免沿用 daemon 中上一次构建的参数
+        this.expandDependents = expandDependents.toBoolean()
+        if (expandDependents.isNotEmpty()) {
+            "expandDependents:$expandDependents".log(PARAMS_TYPE_TASK)
+        }
+
+        val changedLinesOnly = getParamsString(project, TaskParams.CHANGED_LINES_ONLY.paramName)
+        //LintSlot 在 daemon 中一直存在，没有传参数时恢复默认值，上一次构建的参数不会带到本次
+        this.changedLinesOnly = changedLinesOnly.toBoolean()
+        if (changedLinesOnly.isNotEmpty()) {
+            "changedLinesOnly:$changedLinesOnly".log(PARAMS_TYPE_TASK)
+        }
+    }
+
+    /**
+     * 需要输出的报告格式，统一为小写
+     */
+    fun reportFormats(project: Project): List<String> {
+        val formats = getParamList(project, TaskParams.REPORT_FORMATS.paramName)
+            .map { it.trim().toLowerCase() }
+            .filter { it.isNotEmpty() }
+        return if (formats.isEmpty()) DEFAULT_REPORT_FORMATS else formats
     }
 
     /**
@@ -116,17 +179,20 @@ object LintSlot {
     private fun addFileWhiteList(filePaths: List<String>, type: String) {
         filePaths.forEach {
             val itemPath = it.split("/")
-            if (itemPath.size < 4) {
+            if (itemPath.size < 4 && !WhiteListMatcher.isGlob(it)) {
                 //路径小于4级，不规范
                 throw LintException(
                     "Invalid whitelist file path," +
                             " a minimum of 4 levels of directory is required: $it"
                 )
             } else {
-                //路径规范，添加至白名单
-                fileWhiteList_.add(it.replace("/", File.separator))
+                //路径规范，添加至白名单，glob 保持原样
+                fileWhiteList_.add(
+                    if (WhiteListMatcher.isGlob(it)) it else it.replace("/", File.separator)
+                )
             }
         }
+        whiteListMatcher = null
         "fileWhiteList:$fileWhiteList_".log(type)
     }
 
@@ -141,6 +207,7 @@ object LintSlot {
 
     fun clearWhiteList() {
         fileWhiteList_.clear()
+        whiteListMatcher = null
     }
 
     private fun addDisableIssues(issueIds: List<String>, type: String) {
@@ -163,11 +230,13 @@ object LintSlot {
 
     private fun addSuffixWhiteList(whiteList: List<String>, type: String) {
         suffixWhiteList_.addAll(whiteList)
+        whiteListMatcher = null
         "suffixWhiteList:$suffixWhiteList_".log(type)
     }
 
     fun clearSuffixWhiteList() {
         suffixWhiteList_.clear()
+        whiteListMatcher = null
     }
 
     private fun setGitDiffConfig(config: GitDiffConfig, type: String) {
@@ -183,26 +252,37 @@ object LintSlot {
         clearSuffixWhiteList()
     }
 
-    fun finalTargets(project: Project): List<File> {
+    /**
+     * 解析 [project] 最终需要扫描的文件，结果缓存在 project 上，同一次构建中只解析一次
+     */
+    fun finalTargets(project: Project): TargetResolution {
+        val ext = project.extensions.extraProperties
+        synchronized(ext) {
+            if (ext.has(TARGET_RESOLUTION)) {
+                return ext.get(TARGET_RESOLUTION) as TargetResolution
+            }
+            val resolution = resolveTargets(project)
+            "${project.path}:$resolution".log("finalTargets")
+            ext.set(TARGET_RESOLUTION, resolution)
+            return resolution
+        }
+    }
+
+    private fun resolveTargets(project: Project): TargetResolution {
         //在获取最终检查的文件前，先配置gradlew命令中的参数
         setTaskParams(project)
-        val files = LinkedList<File>()
-        //在手动配置的文件列表中插入git diff查询出的差异文件
+        //在手动配置的文件列表中插入git diff查询出的差异文件，不修改 targetFiles 本身，避免重复调用时不断累加
+        val targetFiles = ArrayList<String>(this.targetFiles)
         targetFiles.addAll(addGitDiffTarget(project))
-        //先将所有文件路径去重
-        targetFiles.distinct().forEach { t ->
-            //判断文件白名单
-            if (!fileWhiteList.firstOrNull { t.contains(it) }.isNullOrEmpty()) return@forEach
-            //判断文件后缀白名单
-            if (!suffixWhiteList.firstOrNull { t.endsWith(it) }.isNullOrEmpty()) return@forEach
-            val file = File(t)
-            if (file.exists()) {
-                files.add(file)
-            } else {
-                "this file[$t] is not exists".log("EaseLintReflectiveLintRunner")
-            }
+        if (expandDependents) targetFiles.addAll(addDependentTargets(project))
+        return TargetResolution.resolve(targetFiles, obtainWhiteListMatcher())
+    }
+
+    @Synchronized
+    private fun obtainWhiteListMatcher(): WhiteListMatcher {
+        return whiteListMatcher ?: WhiteListMatcher(fileWhiteList_, suffixWhiteList_).also {
+            whiteListMatcher = it
         }
-        return files
     }
 
     /**
@@ -238,66 +318,53 @@ object LintSlot {
     private fun addGitDiffTarget(project: Project): List<String> {
         if (gitDiffConfig.compareBranch.isEmpty() && gitDiffConfig.compareCommitId.isEmpty())
             return emptyList()
-        val targetList = LinkedList<String>()
-        val pathList = LinkedList<String>()
-
-        //=============git diff指令开始==============
-        //step1.使用配置的commitId，未配置则先查询指定分支最新的commitId
-        val commitId = gitDiffConfig.compareCommitId.ifEmpty {
-            //待对比分支，未指定则默认使用远程master分支
-            val branch = gitDiffConfig.compareBranch.ifEmpty { "origin" }
-            //查询指定分支上最新的commitId
-            val bos = ByteArrayOutputStream()
-            project.rootProject.exec {
-                standardOutput = bos
-                setCommandLine("git", "log", branch, "--pretty=%h", "--max-count=1")
-            }
-            val commitList = bos.toString().split("\n")
-            bos.close()
-            if (commitList.isNotEmpty()) commitList[0] else ""
-        }
+        return GitDiffHelper.changedFiles(project, gitDiffConfig, gitDiffEngine)
+    }
 
-        //step2.找出和指定commitId之间的差异文件
-        val bos = ByteArrayOutputStream()
-        project.rootProject.exec {
-            standardOutput = bos
-            setCommandLine("git", "diff", commitId, "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
-        }
-        val fileListStr = bos.toString()
-        pathList.addAll(fileListStr.split("\n"))
-        bos.reset()
-
-        /*
-        step3.
-        上面的git diff命令只能比较两次提交记录间的差异，适合在CI上执行。
-        但是也需要本地执行，因此需要加上对比工作区和上一次提交之间的差异，
-        寻找未提交的改动新增文件
-         */
-        project.exec {
-            standardOutput = bos
-            setCommandLine("git", "diff", "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
-        }
-        val cachedFileListStr = bos.toString()
-        pathList.addAll(cachedFileListStr.split("\n"))
-        bos.close()
-        //=============git diff指令结束==============
-
-        pathList.forEach {
-            if (it.isEmpty()) return@forEach
-            /*
-            从git指令中获取到的文件路径是相对路径，
-            路径开头可能和从project.rootDir获取到
-            的根目录绝对路径有重复。因此通过项目名称来
-            来截取相对路径，去掉多余路径，避免Lint加载
-            文件失败。且git diff获取到的文件路径分隔符
-            为/，统一替换成当前系统分隔符
-             */
-            targetList.add(
-                "${project.rootDir}${
-                    it.substringAfter(project.rootProject.name).replace("/", File.separator)
-                }"
-            )
+    /**
+     * [project] 最终扫描文件中的改动行，只有 git diff 得到的文件才有改动行，
+     * 未开启 changedLinesOnly 或没有配置 git 对比时返回空表，lint 不按行过滤
+     */
+    fun changedLines(project: Project): Map<String, LineRanges> {
+        if (!changedLinesOnly) return emptyMap()
+        if (gitDiffConfig.compareBranch.isEmpty() && gitDiffConfig.compareCommitId.isEmpty())
+            return emptyMap()
+        val lines = GitDiffHelper.changedLines(project, gitDiffConfig, gitDiffEngine)
+        return finalTargets(project).files.mapNotNull { file ->
+            lines[file.absolutePath]?.let { file.absolutePath to it }
+        }.toMap()
+    }
+
+    /**
+     * 通过引用索引查找本 module 中引用了改动类的文件，改动文件取整个仓库的 git diff，
+     * 这样其他 module 的改动也能影响到本 module
+     */
+    private fun addDependentTargets(project: Project): List<String> {
+        if (gitDiffConfig.compareBranch.isEmpty() && gitDiffConfig.compareCommitId.isEmpty())
+            return emptyList()
+        val changedFiles = GitDiffHelper.changedFiles(project.rootProject, gitDiffConfig, gitDiffEngine)
+        val index = referenceIndex(project.rootProject)
+        val prefix = project.projectDir.absolutePath + File.separator
+        val dependents = index.dependentsOf(changedFiles).filter { it.startsWith(prefix) }
+        "${project.path}: index files=${index.size} dependents=${dependents.size}".log("expandDependents")
+        return dependents
+    }
+
+    /**
+     * 读取所有 module 的引用索引，同一次构建只读取一次
+     */
+    fun referenceIndex(rootProject: Project): ReferenceIndex {
+        val ext = rootProject.extensions.extraProperties
+        synchronized(ext) {
+            if (ext.has(REFERENCE_INDEX)) {
+                return ext.get(REFERENCE_INDEX) as ReferenceIndex
+            }
+            val indexFiles = rootProject.allprojects.map {
+                File(it.buildDir, ReferenceIndex.INDEX_PATH)
+            }
+            val index = ReferenceIndex.load(indexFiles)
+            ext.set(REFERENCE_INDEX, index)
+            return index
         }
-        return targetList
     }
-}
\ No newline at end of file
+}
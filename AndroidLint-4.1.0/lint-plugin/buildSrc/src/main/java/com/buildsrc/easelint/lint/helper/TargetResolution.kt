@@ -0,0 +1,48 @@
+package com.buildsrc.easelint.lint.helper
+
+import com.buildsrc.easelint.lint.utils.WhiteListMatcher
+import com.buildsrc.easelint.lint.utils.log
+import java.io.File
+import java.util.Collections
+
+/**
+ * 一次目标文件解析的结果，同一次构建中每个 module 只解析一次，所有使用方共享，不可修改。
+ *
+ * @param files 最终需要扫描的文件
+ * @param missingFiles 解析出来但磁盘上已不存在的文件路径
+ */
+class TargetResolution(files: List<File>, missingFiles: List<String>) {
+    val files: List<File> = Collections.unmodifiableList(ArrayList(files))
+    val missingFiles: List<String> = Collections.unmodifiableList(ArrayList(missingFiles))
+
+    fun isEmpty(): Boolean = files.isEmpty()
+
+    override fun toString(): String {
+        return "TargetResolution(files=${files.size}, missingFiles=${missingFiles.size})"
+    }
+
+    companion object {
+        /**
+         * 过滤白名单并去除不存在的文件
+         *
+         * @param candidates 候选文件绝对路径
+         */
+        fun resolve(candidates: Collection<String>, matcher: WhiteListMatcher): TargetResolution {
+            val files = ArrayList<File>()
+            val missingFiles = ArrayList<String>()
+            //先将所有文件路径去重
+            candidates.distinct().forEach { t ->
+                //判断文件白名单与文件后缀白名单
+                if (matcher.matches(t)) return@forEach
+                val file = File(t)
+                if (file.exists()) {
+                    files.add(file)
+                } else {
+                    missingFiles.add(t)
+                    "this file[$t] is not exists".log("TargetResolution")
+                }
+            }
+            return TargetResolution(files, missingFiles)
+        }
+    }
+}
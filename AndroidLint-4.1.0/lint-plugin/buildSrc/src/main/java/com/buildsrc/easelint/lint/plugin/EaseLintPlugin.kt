@@ -11,6 +11,7 @@ import com.buildsrc.easelint.lint.helper.LintConfigExtensionHelper
 import com.buildsrc.easelint.lint.helper.LintGradleHelper
 import com.buildsrc.easelint.lint.helper.LintWrapperHelper
 import com.buildsrc.easelint.lint.helper.EaseLintTaskHelper
+import com.buildsrc.easelint.lint.task.AggregateEaseLintResultsTask
 import com.buildsrc.easelint.lint.utils.log
 import org.gradle.api.Plugin
 import org.gradle.api.Project
@@ -24,9 +25,11 @@ class EaseLintPlugin : Plugin<Project> {
         val currentPlugin = libPlugin ?: appPlugin!!
 
         LintConfigExtensionHelper.apply(project)
+        registerAggregateTask(project.rootProject)
         // 访问网络，获取lint 配置,lint gradle 版本，lint wrapper，这两个需要在插件任务初始化时完成配置
         // 最好直接从cdn等文件资源读取数据，这样耗时可以忽略不计
-        LintGradleHelper.init(false, "0.0.4-2023-05-24-11-31-56")
+        // 需与 lint-gradle-api 中 Publish.VERSION 一致，ScanTargetContainer 的反射调用依赖该版本的方法签名
+        LintGradleHelper.init(false, "0.0.5")
         LintWrapperHelper.init(true, "0.0.1-2023-05-24-10-18-01")
 
         project.afterEvaluate {
@@ -40,6 +43,19 @@ class EaseLintPlugin : Plugin<Project> {
     }
 }
 
+/**
+ * 所有 module 的结果在根项目上合并为一份报告，只注册一次
+ */
+private fun registerAggregateTask(rootProject: Project) {
+    synchronized(rootProject) {
+        if (rootProject.tasks.findByName(AggregateEaseLintResultsTask.TASK_NAME) != null) return
+        rootProject.tasks.register(
+            AggregateEaseLintResultsTask.TASK_NAME,
+            AggregateEaseLintResultsTask::class.java
+        )
+    }
+}
+
 /**
  * 读源码后发现可以采用反射获取 VariantManager<VariantT, VariantPropertiesT>
  */
@@ -0,0 +1,37 @@
+package com.buildsrc.easelint.lint.task
+
+import com.buildsrc.easelint.lint.helper.LintOptionsInjector
+import com.buildsrc.easelint.lint.helper.LintResultAggregator
+import com.buildsrc.easelint.lint.utils.log
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.TaskAction
+import java.io.File
+
+/**
+ * 注册在根项目上，把所有 module 的扫描结果合并为一份报告，见 [LintResultAggregator]。
+ * 没有扫描结果的 module 会被忽略，结果没有变化的 module 直接复用上一次的分段
+ * <Task 类必须都是 open>
+ */
+open class AggregateEaseLintResultsTask : DefaultTask() {
+    companion object {
+        const val TASK_NAME = "aggregateEaseLintResults"
+        const val OUTPUT_RELATIVE_PATH = "reports/easelint/aggregate"
+    }
+
+    @TaskAction
+    fun action() {
+        val modules = project.rootProject.allprojects.map {
+            LintResultAggregator.ModuleResult(
+                it.path,
+                it.file(LintOptionsInjector.BINARY_OUTPUT_RELATIVE_PATH),
+                it.file(LintOptionsInjector.XML_OUTPUT_RELATIVE_PATH),
+                it.projectDir
+            )
+        }
+        val concurrency = project.findProperty(LintResultAggregator.PROPERTY_CONCURRENCY)
+            ?.toString()?.toIntOrNull() ?: Runtime.getRuntime().availableProcessors()
+        val outputDir = File(project.buildDir, OUTPUT_RELATIVE_PATH)
+        val result = LintResultAggregator(outputDir, concurrency).aggregate(modules)
+        "modules:${result.modules} rebuilt:${result.rebuilt} total:${result.total}".log(TASK_NAME)
+    }
+}
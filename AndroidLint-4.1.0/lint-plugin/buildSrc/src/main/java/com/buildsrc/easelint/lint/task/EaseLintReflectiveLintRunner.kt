@@ -4,31 +4,62 @@ import com.android.tools.lint.gradle.api.DelegatingClassLoader
 import com.android.tools.lint.gradle.api.ExtractAnnotationRequest
 import com.android.tools.lint.gradle.api.LintExecutionRequest
 import com.buildsrc.easelint.lint.helper.LintSlot
+import com.buildsrc.easelint.lint.utils.log
+import com.android.utils.JvmWideVariable
 import com.google.common.base.Throwables
+import com.google.common.reflect.TypeToken
 import org.gradle.api.GradleException
 import org.gradle.api.Project
 import org.gradle.api.invocation.Gradle
 import org.gradle.initialization.BuildCompletionListener
 import java.io.File
+import java.lang.ref.SoftReference
 import java.lang.reflect.InvocationTargetException
 import java.net.URI
 import java.net.URL
 import java.net.URLClassLoader
+import java.security.MessageDigest
 import java.util.*
 
 class EaseLintReflectiveLintRunner {
 
-    private fun lockTheTarget(loader: ClassLoader, project: Project): Boolean {
-        val files = LintSlot.finalTargets(project)
-        if (files.isNotEmpty()) {
+    /**
+     * 按 project path 与 variant 注册待扫描文件，多个 module 并行执行时互不影响
+     */
+    private fun lockTheTarget(
+        loader: ClassLoader,
+        project: Project,
+        variantName: String?
+    ): Boolean {
+        val resolution = LintSlot.finalTargets(project)
+        if (!resolution.isEmpty()) {
             val clz = loader.loadClass(LINT_GRADLE_HOOK_CLASS)
-            val method = clz.getDeclaredMethod("putCheckListFiles", List::class.java)
-            method.invoke(null, files)
+            val method = clz.getDeclaredMethod(
+                "putCheckListFiles",
+                String::class.java,
+                String::class.java,
+                List::class.java
+            )
+            method.invoke(null, project.path, variantName, resolution.files)
+            //开启 changedLinesOnly 时把改动行一起交给 lint，只跨 classloader 传递 IntArray
+            val changedLines = LintSlot.changedLines(project).mapValues { it.value.toArray() }
+            clz.getDeclaredMethod(
+                "putChangedLines",
+                String::class.java,
+                String::class.java,
+                Map::class.java
+            ).invoke(null, project.path, variantName, changedLines)
             return true
         }
         return false
     }
 
+    private fun releaseTheTarget(loader: ClassLoader, project: Project, variantName: String?) {
+        val clz = loader.loadClass(LINT_GRADLE_HOOK_CLASS)
+        val method = clz.getDeclaredMethod("remove", String::class.java, String::class.java)
+        method.invoke(null, project.path, variantName)
+    }
+
     fun runLint(
         gradle: Gradle,
         request: LintExecutionRequest,
@@ -36,15 +67,29 @@ class EaseLintReflectiveLintRunner {
         project: Project
     ) {
         try {
-            val loader = getLintClassLoader(gradle, lintClassPath)
-            if (!lockTheTarget(loader, project)) {
+            val start = System.currentTimeMillis()
+            val keepEnvironment =
+                project.findProperty(PROPERTY_KEEP_ENVIRONMENT)?.toString() == "true"
+            val loader = getLintClassLoader(gradle, lintClassPath, keepEnvironment)
+            val variantName = request.variantName
+            if (!lockTheTarget(loader, project, variantName)) {
                 throw GradleException("Before running easelint, you may need to check if the target is empty first.")
             }
-            val cls = loader.loadClass("com.android.tools.lint.gradle.LintGradleExecution")
-            val constructor = cls.getConstructor(LintExecutionRequest::class.java)
-            val driver = constructor.newInstance(request)
-            val analyzeMethod = driver.javaClass.getDeclaredMethod("analyze")
-            analyzeMethod.invoke(driver)
+            try {
+                val cls = loader.loadClass("com.android.tools.lint.gradle.LintGradleExecution")
+                val constructor = cls.getConstructor(LintExecutionRequest::class.java)
+                val driver = constructor.newInstance(request)
+                val analyzeMethod = driver.javaClass.getDeclaredMethod("analyze")
+                val analyzeStart = System.currentTimeMillis()
+                analyzeMethod.invoke(driver)
+                //启动耗时包含 classloader 的创建与 lint 类的加载，复用时应接近 0；
+                //analyze 耗时应随目标文件数量变化，而不是随 module 大小变化
+                ("${project.path}: targets=${LintSlot.finalTargets(project).files.size}" +
+                        " startup cost ${analyzeStart - start}ms," +
+                        " analyze cost ${System.currentTimeMillis() - analyzeStart}ms").log(TAG)
+            } finally {
+                releaseTheTarget(loader, project, variantName)
+            }
         } catch (e: InvocationTargetException) {
             if (e.targetException is GradleException) {
                 // Build error from lint -- pass it on
@@ -63,7 +108,7 @@ class EaseLintReflectiveLintRunner {
         lintClassPath: Set<File>
     ) {
         try {
-            val loader = getLintClassLoader(gradle, lintClassPath)
+            val loader = getLintClassLoader(gradle, lintClassPath, false)
             val cls = loader.loadClass("com.android.tools.lint.gradle.LintExtractAnnotations")
             val driver = cls.newInstance()
             val analyzeMethod = driver.javaClass.getDeclaredMethod(
@@ -89,42 +134,144 @@ class EaseLintReflectiveLintRunner {
     )
 
     companion object {
-        // There should only be one Lint class loader, and it should
-        // exist for the entire lifetime of the Gradle daemon.
-        private var loader: DelegatingClassLoader? = null
+        private const val TAG = "EaseLintReflectiveLintRunner"
+
+        //-PeaseLintKeepLintEnvironment=true 构建结束后在 daemon 中保留 UAST 环境，默认每次构建结束都释放
+        const val PROPERTY_KEEP_ENVIRONMENT = "easeLintKeepLintEnvironment"
+
+        //同时保留的 classloader 数量，切换 lint 或 hook 版本后旧的 classloader 按 LRU 淘汰
+        private const val MAX_CACHED_LOADERS = 2
 
-        private var buildCompletionListenerRegistered = false
         private const val LINT_GRADLE_HOOK_CLASS =
             "com.android.tools.lint.gradle.ScanTargetContainer"
 
+        /**
+         * 按 lint classpath 的 hash 缓存 classloader，daemon 存活期间复用，buildSrc 重新编译后也不会丢失；
+         * lint-gradle 的 hook 版本或 lint 版本变化时 classpath 不同，会创建新的 classloader。
+         * 使用软引用，内存紧张时可以被回收，不会一直占用没有在使用的 classloader。
+         *
+         * JvmWideVariable must only use built in types to avoid leaking the current classloader.
+         */
+        private val cachedClassloader: JvmWideVariable<MutableMap<String, SoftReference<ClassLoader>>> =
+            JvmWideVariable(
+                LintExecutionRequest::class.java,
+                "easeLintCachedClassloader",
+                object : TypeToken<MutableMap<String, SoftReference<ClassLoader>>>() {}
+            ) { LinkedHashMap(4, 0.75f, true) }
 
+        /**
+         * 保留了 UAST 环境的 classloader，强引用，软引用不会在环境释放前被回收；
+         * 环境只在 LRU 淘汰或之后的构建不再保留时释放，不会因为软引用被清除而一直留在 daemon 中
+         */
+        private val keptLoaders: JvmWideVariable<MutableSet<ClassLoader>> =
+            JvmWideVariable(
+                LintExecutionRequest::class.java,
+                "easeLintKeptClassloaders",
+                object : TypeToken<MutableSet<ClassLoader>>() {}
+            ) { LinkedHashSet() }
+
+        //本次构建中用到的 classloader，构建结束时清理注册的扫描目标
+        private val usedLoaders = LinkedHashSet<ClassLoader>()
+
+        //已被淘汰、等待构建结束时释放的 classloader
+        private val evictedLoaders = ArrayList<ClassLoader>()
+
+        private var buildCompletionListenerRegistered = false
+
+        /**
+         * There can be multiple Lint tasks running in parallel, and we would like them
+         * to share the same UastEnvironment (in order to share caches).
+         * [keepEnvironment] 为 true 时构建结束后也不释放，下一次构建直接使用已经初始化好的 UAST 环境；
+         * 以本次构建中第一次获取时的值为准
+         */
         @Synchronized
-        private fun getLintClassLoader(gradle: Gradle, lintClassPath: Set<File>): ClassLoader {
-            var l = loader
-            if (l == null) {
-                val urls = computeUrlsFromClassLoaderDelta(lintClassPath)
-                    ?: computeUrlsFallback(lintClassPath)
-                l = DelegatingClassLoader(urls.toTypedArray())
-                loader = l
-            }
-
-            // There can be multiple Lint tasks running in parallel, and we would like them
-            // to share the same UastEnvironment (in order to share caches).
-            // Thus we do not dispose the UastEnvironment until the entire
-            // Gradle invocation finishes.
+        private fun getLintClassLoader(
+            gradle: Gradle,
+            lintClassPath: Set<File>,
+            keepEnvironment: Boolean
+        ): ClassLoader {
+            val key = classpathKey(lintClassPath)
+            val l = cachedClassloader.executeCallableSynchronously {
+                //accessOrder 的 LinkedHashMap，get 会把命中的 classloader 移到末尾
+                val map = cachedClassloader.get()
+                map[key]?.get()?.also {
+                    "reuse lint classloader $key".log(TAG)
+                } ?: createClassLoader(lintClassPath).also {
+                    map[key] = SoftReference<ClassLoader>(it)
+                    "create lint classloader $key".log(TAG)
+                    evictEldest(map)
+                }
+            }
+            usedLoaders.add(l)
+
             if (!buildCompletionListenerRegistered) {
                 buildCompletionListenerRegistered = true
-                gradle.addListener(BuildCompletionListener {
-                    val cls = l.loadClass("com.android.tools.lint.UastEnvironment")
-                    val disposeMethod = cls.getDeclaredMethod("disposeApplicationEnvironment")
-                    disposeMethod.invoke(null)
-                    buildCompletionListenerRegistered = false
-                })
+                gradle.addListener(BuildCompletionListener { onBuildCompleted(keepEnvironment) })
             }
 
             return l
         }
 
+        private fun createClassLoader(lintClassPath: Set<File>): ClassLoader {
+            val urls = computeUrlsFromClassLoaderDelta(lintClassPath)
+                ?: computeUrlsFallback(lintClassPath)
+            return DelegatingClassLoader(urls.toTypedArray())
+        }
+
+        /**
+         * 超出 [MAX_CACHED_LOADERS] 时淘汰最久没有使用的，已被回收的直接移除
+         */
+        private fun evictEldest(map: MutableMap<String, SoftReference<ClassLoader>>) {
+            val iterator = map.entries.iterator()
+            while (map.size > MAX_CACHED_LOADERS && iterator.hasNext()) {
+                //可能还有任务在使用，构建结束时再释放它的 UAST 环境
+                iterator.next().value.get()?.let { loader ->
+                    evictedLoaders.add(loader)
+                    keptLoaders.executeCallableSynchronously { keptLoaders.get().remove(loader) }
+                }
+                iterator.remove()
+            }
+        }
+
+        @Synchronized
+        private fun onBuildCompleted(keepEnvironment: Boolean) {
+            keptLoaders.executeCallableSynchronously {
+                val kept = keptLoaders.get()
+                usedLoaders.forEach { if (keepEnvironment) kept.add(it) else kept.remove(it) }
+                kept.removeAll(evictedLoaders)
+            }
+            usedLoaders.forEach {
+                if (!keepEnvironment) disposeEnvironment(it)
+                // 任务失败或被取消时 finally 之外可能还有残留，构建结束时统一清理
+                it.loadClass(LINT_GRADLE_HOOK_CLASS)
+                    .getDeclaredMethod("clearAll")
+                    .invoke(null)
+            }
+            //被淘汰的 classloader 可能在之前的构建中保留了环境
+            evictedLoaders.forEach { disposeEnvironment(it) }
+            usedLoaders.clear()
+            evictedLoaders.clear()
+            buildCompletionListenerRegistered = false
+        }
+
+        private fun disposeEnvironment(loader: ClassLoader) {
+            val cls = loader.loadClass("com.android.tools.lint.UastEnvironment")
+            val disposeMethod = cls.getDeclaredMethod("disposeApplicationEnvironment")
+            disposeMethod.invoke(null)
+        }
+
+        /**
+         * classpath 中每个文件的路径、大小与修改时间的 sha256，
+         * 本地重新发布同一版本的 hook 包时也能区分
+         */
+        private fun classpathKey(lintClassPath: Set<File>): String {
+            val digest = MessageDigest.getInstance("SHA-256")
+            lintClassPath.map { "${it.absolutePath}:${it.length()}:${it.lastModified()}" }
+                .sorted()
+                .forEach { digest.update(it.toByteArray(Charsets.UTF_8)) }
+            return digest.digest().take(8).joinToString("") { String.format("%02x", it) }
+        }
+
         /**
          * Computes the class loader based on looking at the given [lintClassPath] and
          * subtracting out classes already loaded by the Gradle plugin directly.
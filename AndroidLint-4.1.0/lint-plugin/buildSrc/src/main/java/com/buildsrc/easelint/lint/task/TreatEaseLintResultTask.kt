@@ -1,5 +1,13 @@
 package com.buildsrc.easelint.lint.task
 
+import com.buildsrc.easelint.lint.helper.LintOptionsInjector
+import com.buildsrc.easelint.lint.helper.LintSlot
+import com.buildsrc.easelint.lint.utils.BaselineStore
+import com.buildsrc.easelint.lint.utils.IssueFingerprint
+import com.buildsrc.easelint.lint.utils.LintResultBinary
+import com.buildsrc.easelint.lint.utils.LintResultRecord
+import com.buildsrc.easelint.lint.utils.LintResultParser
+import com.buildsrc.easelint.lint.utils.LintResultSummary
 import com.buildsrc.easelint.lint.utils.log
 import groovy.lang.Closure
 import org.gradle.api.Action
@@ -12,6 +20,10 @@ import org.gradle.api.tasks.TaskAction
  * 比如：
  * 1.上传 lint 报告 或发送邮件
  * 2.解析 lint 报告，通知企业 IM
+ * 报告生成时已经由 lint-gradle 直接写出了 SARIF 与紧凑的二进制结果，
+ * 这里优先读取二进制结果，没有时再用 StAX 流式解析 xml，
+ * 按 issue/severity/module 统计问题数量，并挑出 baseline 中没有的新问题，
+ * 存在 EaseLint baseline（见 BaselineStore）时新增的 Error/Fatal 问题会让构建失败
  * <Task 类必须都是 open>
  */
 open class TreatEaseLintResultTask : DefaultTask() {
@@ -22,6 +34,106 @@ open class TreatEaseLintResultTask : DefaultTask() {
     @TaskAction
     fun action() {
         "TreatEaseLintResultTask:action".log("lifeTrack____1")
+        //作为 easeLint 的 finalizer，easeLint 因为没有目标文件被跳过时同样会执行
+        if (LintSlot.finalTargets(project).isEmpty()) {
+            clearResults()
+            return
+        }
+        summarize()
+    }
+
+    /**
+     * 本次构建没有扫描，删除之前构建遗留的结果，
+     * 避免被当作本次的结果检查 baseline，或被 aggregateEaseLintResults 合并
+     */
+    private fun clearResults() {
+        listOf(
+            LintOptionsInjector.BINARY_OUTPUT_RELATIVE_PATH,
+            LintOptionsInjector.XML_OUTPUT_RELATIVE_PATH,
+            LintOptionsInjector.HTML_OUTPUT_RELATIVE_PATH,
+            LintOptionsInjector.SARIF_OUTPUT_RELATIVE_PATH
+        ).map { project.file(it) }.filter { it.isFile }.forEach {
+            it.delete()
+            "remove stale result: ${it.absolutePath}".log(TASK_NAME)
+        }
+    }
+
+    //本次是否使用 EaseLint baseline 判断新问题
+    private var matchEaseLintBaseline = false
+
+    private fun summarize() {
+        val fingerprint = IssueFingerprint(project.rootDir)
+        val summary = createSummary(fingerprint)
+        val builder = if (updateBaseline()) BaselineStore.Builder() else null
+        val module = project.path
+        val action: (LintResultRecord) -> Unit = {
+            summary.add(module, it)
+            builder?.add(fingerprint.of(it), it, fingerprint.relativePath(it.file))
+        }
+        val binary = project.file(LintOptionsInjector.BINARY_OUTPUT_RELATIVE_PATH)
+        val xml = project.file(LintOptionsInjector.XML_OUTPUT_RELATIVE_PATH)
+        try {
+            when {
+                //-PreportFormats 去掉 bin 后可能残留上一次的二进制结果
+                binary.isFile && (!xml.isFile || binary.lastModified() >= xml.lastModified()) ->
+                    LintResultBinary.read(binary, action)
+                xml.isFile -> LintResultParser.parse(xml, project.projectDir, action)
+                else -> return
+            }
+        } catch (e: Exception) {
+            //二进制文件不完整或 xml 格式错误时不影响构建
+            "can not read lint result: ${e.message}".log(TASK_NAME)
+            return
+        }
+        summary.toString().log(TASK_NAME)
+        summary.newIssues.forEach {
+            "new issue ${it.id}: ${it.file}:${it.line} ${it.message}".log(TASK_NAME)
+        }
+        val sarif = project.file(LintOptionsInjector.SARIF_OUTPUT_RELATIVE_PATH)
+        if (sarif.isFile) "sarif:${sarif.absolutePath}".log(TASK_NAME)
+        if (builder != null) {
+            val baseline = project.file(BaselineStore.FILE_NAME)
+            //easeLint 只扫描目标文件，其他文件在旧 baseline 中的记录保留
+            val scanned = LintSlot.finalTargets(project).files
+                .map { fingerprint.relativePath(it.absolutePath) }
+            builder.retain(baseline, scanned.toSet())
+            builder.writeTo(baseline)
+            "baseline updated: ${baseline.absolutePath}".log(TASK_NAME)
+        } else {
+            checkNewErrors(summary)
+        }
+    }
+
+    private fun updateBaseline(): Boolean {
+        if (project.findProperty(BaselineStore.PROPERTY_UPDATE)?.toString() != "true") return false
+        //报告中只有改动行上的问题，用它更新 baseline 会丢掉目标文件中其他行的记录
+        if (LintSlot.changedLinesOnly) {
+            throw LintException("Can not update baseline with changedLinesOnly=true")
+        }
+        return true
+    }
+
+    /**
+     * 存在 EaseLint baseline 时按指纹匹配，否则退化为按 lint baseline 匹配
+     */
+    private fun createSummary(fingerprint: IssueFingerprint): LintResultSummary {
+        val easeLintBaseline = project.file(BaselineStore.FILE_NAME)
+        if (easeLintBaseline.isFile && !updateBaseline()) {
+            val matcher = BaselineStore.load(easeLintBaseline).matcher()
+            matchEaseLintBaseline = true
+            return LintResultSummary { matcher.isKnown(fingerprint.of(it)) }
+        }
+        val baseline = project.file(LintOptionsInjector.BASELINE_RELATIVE_PATH)
+        val keys = if (baseline.isFile) LintResultSummary.loadKnownKeys(baseline) else emptySet()
+        return LintResultSummary { keys.contains(LintResultSummary.keyOf(it)) }
+    }
 
+    private fun checkNewErrors(summary: LintResultSummary) {
+        if (!matchEaseLintBaseline || summary.newErrorCount == 0) return
+        val details = summary.newIssues
+            .filter { it.severity == "Error" || it.severity == "Fatal" }
+            .take(20)
+            .joinToString("\n") { "${it.id}: ${it.file}:${it.line} ${it.message}" }
+        throw LintException("${summary.newErrorCount} new lint errors compared with baseline:\n$details")
     }
 }
\ No newline at end of file
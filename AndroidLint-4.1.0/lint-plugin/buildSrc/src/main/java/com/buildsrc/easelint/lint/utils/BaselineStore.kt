@@ -0,0 +1,94 @@
+package com.buildsrc.easelint.lint.utils
+
+import java.io.File
+
+/**
+ * EaseLint 的 baseline，以 [IssueFingerprint] 为 key 记录已有问题的数量，查找为 O(1)，不随 baseline 增长变慢。
+ *
+ * 文件格式：首行为 "#easelint-baseline v1 <总数>"，随后每行 "指纹\t数量\tissue id\t文件相对路径"，
+ * 后两列只用于阅读。同一指纹出现多次时按数量匹配，超出 baseline 记录数量的部分视为新问题
+ */
+class BaselineStore private constructor(private val counts: Map<String, Int>) {
+    val size: Int get() = counts.size
+
+    /**
+     * 每次匹配都会消耗一个数量，一个 matcher 只能用于一次扫描结果
+     */
+    inner class Matcher {
+        private val remaining = HashMap<String, Int>()
+
+        fun isKnown(fingerprint: String): Boolean {
+            val left = remaining[fingerprint] ?: counts[fingerprint] ?: return false
+            if (left <= 0) return false
+            remaining[fingerprint] = left - 1
+            return true
+        }
+    }
+
+    fun matcher(): Matcher = Matcher()
+
+    /**
+     * 收集本次扫描的指纹，用于生成新的 baseline
+     */
+    class Builder {
+        private val counts = LinkedHashMap<String, Int>()
+        private val descriptions = HashMap<String, String>()
+
+        fun add(fingerprint: String, record: LintResultRecord, relativePath: String) {
+            counts[fingerprint] = (counts[fingerprint] ?: 0) + 1
+            descriptions.getOrPut(fingerprint) { "${record.id}\t$relativePath" }
+        }
+
+        /**
+         * 合并旧 baseline 中 [scanned] 以外文件的记录，只扫描部分文件时不会丢掉其他文件的问题；
+         * 本次扫描已经产生的指纹以本次结果为准
+         * @param scanned 本次扫描的文件，相对根目录的路径
+         */
+        fun retain(file: File, scanned: Set<String>) {
+            if (!file.isFile) return
+            val current = counts.keys.toSet()
+            file.forEachLine { line ->
+                if (line.isEmpty() || line.startsWith("#")) return@forEachLine
+                val columns = line.split('\t')
+                val fingerprint = columns[0]
+                val path = columns.getOrNull(3).orEmpty()
+                if (scanned.contains(path) || current.contains(fingerprint)) return@forEachLine
+                counts[fingerprint] = (counts[fingerprint] ?: 0) + (columns.getOrNull(1)?.toIntOrNull() ?: 1)
+                descriptions.getOrPut(fingerprint) { "${columns.getOrNull(2).orEmpty()}\t$path" }
+            }
+        }
+
+        fun writeTo(file: File) {
+            file.parentFile?.mkdirs()
+            file.bufferedWriter().use { writer ->
+                writer.write("$HEADER ${counts.values.sum()}")
+                writer.newLine()
+                counts.toSortedMap().forEach { (fingerprint, count) ->
+                    writer.write("$fingerprint\t$count\t${descriptions[fingerprint]}")
+                    writer.newLine()
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val HEADER = "#easelint-baseline v1"
+
+        //-PeaseLintUpdateBaseline=true 用本次扫描结果更新 baseline，未扫描的文件保留原有记录
+        const val PROPERTY_UPDATE = "easeLintUpdateBaseline"
+
+        const val FILE_NAME = "easelint-baseline.txt"
+
+        fun load(file: File): BaselineStore {
+            val counts = HashMap<String, Int>()
+            if (file.isFile) {
+                file.forEachLine { line ->
+                    if (line.isEmpty() || line.startsWith("#")) return@forEachLine
+                    val columns = line.split('\t')
+                    counts[columns[0]] = columns.getOrNull(1)?.toIntOrNull() ?: 1
+                }
+            }
+            return BaselineStore(counts)
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.buildsrc.easelint.lint.utils
+
+import java.io.File
+
+/**
+ * 一个文件中改动过的行，行号从 1 开始，区间两端都包含。
+ *
+ * 构建时把重叠和相邻的区间合并，合并后的区间互不相交且有序，
+ * 以 [start0, end0, start1, end1, ...] 的形式保存在一个 IntArray 中，
+ * 判断一个行区间是否与改动重叠只需要一次二分查找
+ */
+class LineRanges private constructor(private val bounds: IntArray) {
+
+    val size: Int get() = bounds.size / 2
+
+    fun isEmpty(): Boolean = bounds.isEmpty()
+
+    fun contains(line: Int): Boolean = overlaps(line, line)
+
+    /**
+     * [start] 到 [end] 之间是否有改动过的行
+     */
+    fun overlaps(start: Int, end: Int): Boolean {
+        //找到第一个结束行 >= start 的区间，再判断它的起始行是否 <= end
+        var low = 0
+        var high = size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (bounds[mid * 2 + 1] < start) low = mid + 1 else high = mid - 1
+        }
+        return low < size && bounds[low * 2] <= end
+    }
+
+    /**
+     * 交给 lint 进程时使用的原始数组，格式同 [bounds]
+     */
+    fun toArray(): IntArray = bounds.copyOf()
+
+    override fun toString(): String {
+        val builder = StringBuilder()
+        for (i in 0 until size) {
+            if (i > 0) builder.append(',')
+            builder.append(bounds[i * 2]).append('-').append(bounds[i * 2 + 1])
+        }
+        return builder.toString()
+    }
+
+    companion object {
+        private const val MANIFEST_HEADER = "#easelint-changed-lines v1"
+
+        const val FILE_NAME = "changed-lines.txt"
+
+        fun of(ranges: Collection<IntRange>): LineRanges {
+            val sorted = ranges.filter { !it.isEmpty() }.sortedBy { it.first }
+            val bounds = ArrayList<Int>(sorted.size * 2)
+            sorted.forEach { range ->
+                val last = bounds.size - 1
+                if (last > 0 && range.first <= bounds[last] + 1) {
+                    if (range.last > bounds[last]) bounds[last] = range.last
+                } else {
+                    bounds.add(range.first)
+                    bounds.add(range.last)
+                }
+            }
+            return LineRanges(bounds.toIntArray())
+        }
+
+        /**
+         * 解析 [toString] 的结果，比如 "1-3,7-7"
+         */
+        fun parse(text: String): LineRanges {
+            if (text.isEmpty()) return of(emptyList())
+            return of(text.split(',').mapNotNull {
+                val start = it.substringBefore('-').toIntOrNull() ?: return@mapNotNull null
+                val end = it.substringAfter('-').toIntOrNull() ?: return@mapNotNull null
+                start..end
+            })
+        }
+
+        /**
+         * 写出改动行清单：第一行为 # 开头的头信息，之后每行 "文件绝对路径\t1-3,7-7"
+         */
+        fun writeTo(output: File, lines: Map<String, LineRanges>) {
+            output.parentFile?.mkdirs()
+            output.bufferedWriter().use { writer ->
+                writer.write("$MANIFEST_HEADER ${lines.size}")
+                writer.newLine()
+                lines.toSortedMap().forEach { (path, ranges) ->
+                    writer.write("$path\t$ranges")
+                    writer.newLine()
+                }
+            }
+        }
+
+        /**
+         * 读取 [writeTo] 写出的清单，文件不存在时返回空表，表示不按行过滤
+         */
+        fun readFrom(input: File): Map<String, LineRanges> {
+            if (!input.isFile) return emptyMap()
+            val result = HashMap<String, LineRanges>()
+            input.forEachLine { line ->
+                if (line.isEmpty() || line.startsWith("#")) return@forEachLine
+                val path = line.substringBefore('\t')
+                result[path] = parse(line.substringAfter('\t', ""))
+            }
+            return result
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.buildsrc.easelint.lint.utils
+
+import java.io.File
+
+/**
+ * 按 issue、severity、module 统计问题数量，并挑出 [isKnown] 返回 false 的新问题。
+ * 只保留计数与最多 [MAX_NEW_ISSUES] 条新问题，不保留全部记录
+ */
+class LintResultSummary(private val isKnown: (LintResultRecord) -> Boolean = { false }) {
+    val byIssue = LinkedHashMap<String, Int>()
+    val bySeverity = LinkedHashMap<String, Int>()
+    val byModule = LinkedHashMap<String, Int>()
+
+    val newIssues = ArrayList<LintResultRecord>()
+
+    var total = 0
+        private set
+
+    var newCount = 0
+        private set
+
+    //新问题中 Error 与 Fatal 的数量
+    var newErrorCount = 0
+        private set
+
+    fun add(module: String, record: LintResultRecord) {
+        total++
+        byIssue.increase(record.id)
+        bySeverity.increase(record.severity)
+        byModule.increase(module)
+        if (!isKnown(record)) {
+            newCount++
+            if (record.severity == "Error" || record.severity == "Fatal") newErrorCount++
+            if (newIssues.size < MAX_NEW_ISSUES) newIssues.add(record)
+        }
+    }
+
+    private fun MutableMap<String, Int>.increase(key: String) {
+        this[key] = (this[key] ?: 0) + 1
+    }
+
+    override fun toString(): String {
+        return "total:$total new:$newCount newError:$newErrorCount severity:$bySeverity module:$byModule issue:$byIssue"
+    }
+
+    companion object {
+        private const val MAX_NEW_ISSUES = 1000
+
+        /**
+         * 与 lint baseline 的匹配规则类似，不包含行号，只取父目录名 + 文件名，
+         * 代码上下移动或报告使用相对路径时仍能匹配
+         */
+        fun keyOf(record: LintResultRecord): String {
+            val file = File(record.file.replace('\\', '/'))
+            val parent = file.parentFile?.name
+            val name = if (parent != null) "$parent/${file.name}" else file.name
+            return record.id + '\u0000' + name + '\u0000' + record.message
+        }
+
+        /**
+         * 读取 lint baseline（与 lint-results.xml 格式相同）中所有问题的 key
+         */
+        fun loadKnownKeys(baseline: File): Set<String> {
+            val keys = HashSet<String>()
+            LintResultParser.parse(baseline, null) { keys.add(keyOf(it)) }
+            return keys
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.buildsrc.easelint.lint.utils
+
+import java.io.File
+
+/**
+ * 读取 lint-checks 中 ReferenceIndexDetector 写出的引用索引，反向查找引用了指定类的文件。
+ * 每行格式：文件绝对路径 \t 声明的类(逗号分隔) \t 引用的类(逗号分隔)
+ */
+class ReferenceIndex private constructor(
+    //文件 -> 文件中声明的类
+    private val declaredClasses: Map<String, List<String>>,
+    //类 -> 引用了该类的文件
+    private val dependents: Map<String, Set<String>>
+) {
+    val size: Int get() = declaredClasses.size
+
+    /**
+     * 查找直接引用了 [changedFiles] 中声明的类的文件，不包含 [changedFiles] 本身
+     */
+    fun dependentsOf(changedFiles: Collection<String>): Set<String> {
+        val result = LinkedHashSet<String>()
+        changedFiles.forEach { file ->
+            declaredClasses[file]?.forEach { clz ->
+                dependents[clz]?.let { result.addAll(it) }
+            }
+        }
+        result.removeAll(changedFiles)
+        return result
+    }
+
+    companion object {
+        //相对 module buildDir 的路径，与 ReferenceIndexDetector.INDEX_PATH 保持一致
+        const val INDEX_PATH = "intermediates/easelint/reference-index.txt"
+
+        fun load(indexFiles: Collection<File>): ReferenceIndex {
+            val declaredClasses = HashMap<String, List<String>>()
+            val dependents = HashMap<String, MutableSet<String>>()
+            indexFiles.filter { it.isFile }.forEach { index ->
+                index.forEachLine { line ->
+                    if (line.isEmpty() || line.startsWith("#")) return@forEachLine
+                    val columns = line.split('\t')
+                    val path = columns[0]
+                    declaredClasses[path] = columns.getOrNull(1).splitNames()
+                    columns.getOrNull(2).splitNames().forEach {
+                        dependents.getOrPut(it) { HashSet() }.add(path)
+                    }
+                }
+            }
+            return ReferenceIndex(declaredClasses, dependents)
+        }
+
+        private fun String?.splitNames(): List<String> {
+            if (this.isNullOrEmpty()) return emptyList()
+            return split(',')
+        }
+    }
+}
@@ -64,7 +64,7 @@ dependencies {
     implementation("androidx.appcompat:appcompat:1.4.1")
     implementation("androidx.core:core-ktx:1.8.0")
     //查看源码
-    compileOnly("com.easelint.snapshot:30.4.2-lint-api:0.0.1-2023-06-28-06-30-10")
+    compileOnly("com.easelint.snapshot:30.4.2-lint-api:${com.buildsrc.kts.Publish.VERSION}")
 
 }
 
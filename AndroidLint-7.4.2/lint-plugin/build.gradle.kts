@@ -23,6 +23,9 @@ buildscript {
 //    id("org.jetbrains.kotlin.jvm") version ("1.7.20") apply false
 //}
 
+// 在根项目上注册 aggregateEaseLintResults，合并各 module 的 EaseLint 结果
+apply(plugin = "ease.lint.aggregate")
+
 // 在 settings.gradle 中也无法直接使用 buildSrc的类，所以还是改到这里进行配置
 // 在BuildSrc 编译与 module 存在冲突时 这里无法成功引用 buildSrc 的类
 // 所以此项目中优先使用 显式配置方式
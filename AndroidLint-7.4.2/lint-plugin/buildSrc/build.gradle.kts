@@ -72,5 +72,19 @@ dependencies {
     implementation("com.android.tools.build:gradle:7.4.2")
     implementation(kotlin("stdlib"))
     compileOnly("com.android.tools.lint:lint-api:30.4.2")
+    // 进程内 git diff
+    implementation("org.eclipse.jgit:org.eclipse.jgit:5.13.1.202206130422-r")
 
 }
+
+//WhiteListMatcher 的基准测试，不参与插件编译：./gradlew -p buildSrc whiteListMatcherBenchmark
+val benchmark: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+    runtimeClasspath += sourceSets["main"].output + sourceSets["main"].runtimeClasspath
+}
+
+tasks.register("whiteListMatcherBenchmark", JavaExec::class) {
+    description = "Compare contains/endsWith whitelist matching with WhiteListMatcher"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.buildsrc.lint.utils.WhiteListMatcherBenchmarkKt")
+}
@@ -1,11 +1,18 @@
 package com.buildsrc.kts
 
 import com.buildsrc.kts.Repositories.mavenPassword
+import org.gradle.api.GradleException
+import org.gradle.api.Project
 import org.gradle.api.artifacts.dsl.RepositoryHandler
 import org.gradle.api.publish.maven.MavenPublication
+import org.gradle.api.publish.maven.tasks.PublishToMavenRepository
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.Base64
 
 object Publish {
-    private const val VERSION = "0.0.1"
+    // lint-api hook 包的版本，EaseLintPlugin 直接引用，修改 lint-api 后必须同时升级
+    const val VERSION = "0.0.3"
     const val SNAPSHOT = true
 
     // 基于 27.1.0版本的 lint gradle 进行二开，对应AGP 4.1.0
@@ -15,13 +22,6 @@ object Publish {
     //由于阿里云 制品 采取分仓管理snapshot版本，默认也会忽略-SNAPSHOT的策略模式，所以这里从group进行区分，便于管理
     private val GROUP_ID = if (SNAPSHOT) "com.easelint.snapshot" else "com.easelint"
 
-    private fun getTimestamp(): String {
-        return java.text.SimpleDateFormat(
-            "yyyy-MM-dd-hh-mm-ss",
-            java.util.Locale.CHINA
-        ).format(java.util.Date())
-    }
-
     object Maven {
         private val repositoryUserName: String
         private val repositoryPassword: String
@@ -41,10 +41,42 @@ object Publish {
         fun setGAV(mp: MavenPublication) {
             mp.groupId = GROUP_ID
             mp.artifactId = ARTIFACT_ID
-            mp.version = VERSION + "-" + getTimestamp()
+            mp.version = VERSION
             println("publish=> ${mp.groupId}:${mp.artifactId}:${mp.version}")
         }
 
+        /**
+         * 版本号不再带时间戳，发布前检查仓库中是否已经存在该版本，
+         * 修改了代码却忘记升级 [VERSION] 时直接失败，不覆盖已经被插件引用的包
+         */
+        fun preventOverwrite(project: Project) {
+            project.tasks.withType(PublishToMavenRepository::class.java).configureEach {
+                doFirst {
+                    val url = repository.url.toString().trimEnd('/')
+                    val artifact = publication.artifactId
+                    val version = publication.version
+                    val pom = "$url/${publication.groupId.replace('.', '/')}/$artifact/$version/$artifact-$version.pom"
+                    if (exists(pom)) {
+                        throw GradleException(
+                            "${publication.groupId}:$artifact:$version has been published, upgrade Publish.VERSION"
+                        )
+                    }
+                }
+            }
+        }
+
+        private fun exists(url: String): Boolean {
+            val connection = URL(url).openConnection() as HttpURLConnection
+            connection.requestMethod = "HEAD"
+            val auth = "$repositoryUserName:$repositoryPassword".toByteArray(Charsets.UTF_8)
+            connection.setRequestProperty("Authorization", "Basic ${Base64.getEncoder().encodeToString(auth)}")
+            return try {
+                connection.responseCode == HttpURLConnection.HTTP_OK
+            } finally {
+                connection.disconnect()
+            }
+        }
+
         /**
          * 使用本地账号密码（用于推送）
          */
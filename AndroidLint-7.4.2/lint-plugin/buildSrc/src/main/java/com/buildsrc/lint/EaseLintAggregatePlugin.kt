@@ -0,0 +1,49 @@
+package com.buildsrc.lint
+
+import com.buildsrc.lint.helper.LintResultAggregator
+import com.buildsrc.lint.task.AggregateEaseLintResultsTask
+import org.gradle.api.GradleException
+import org.gradle.api.Plugin
+import org.gradle.api.Project
+import org.gradle.api.attributes.Usage
+
+/**
+ * 应用在根项目上，注册 aggregateEaseLintResults，合并所有应用了 ease.lint 的 module 的结果。
+ *
+ * 根项目只声明对各个 module 的依赖，通过 Usage 属性选中 module 上的 easeLintResultsElements，
+ * 没有应用 ease.lint 的 module 没有匹配的变种，在宽松解析中被忽略
+ */
+class EaseLintAggregatePlugin : Plugin<Project> {
+
+    override fun apply(project: Project) {
+        if (project != project.rootProject) throw GradleException("ease.lint.aggregate must be applied to the root project")
+
+        val aggregate = project.configurations.create(AggregateEaseLintResultsTask.CONFIGURATION_NAME) {
+            isCanBeConsumed = false
+            isCanBeResolved = true
+            isVisible = false
+            attributes.attribute(
+                Usage.USAGE_ATTRIBUTE,
+                project.objects.named(Usage::class.java, AggregateEaseLintResultsTask.USAGE)
+            )
+        }
+        // 只读取 module 的 path，不访问 module 的模型
+        project.subprojects.forEach {
+            project.dependencies.add(aggregate.name, project.dependencies.project(mapOf("path" to it.path)))
+        }
+        val results = aggregate.incoming.artifactView { lenient(true) }.artifacts
+
+        val concurrency = project.findProperty(LintResultAggregator.PROPERTY_CONCURRENCY)
+            ?.toString()?.toIntOrNull() ?: Runtime.getRuntime().availableProcessors()
+        project.tasks.register(
+            AggregateEaseLintResultsTask.TASK_NAME,
+            AggregateEaseLintResultsTask::class.java
+        ) {
+            moduleResults.set(results.resolvedArtifacts)
+            // 解析结果携带 module 的 treatEaseLintResult 任务依赖
+            dependsOn(results.artifactFiles)
+            outputDir.set(project.layout.buildDirectory.dir("reports/easelint/aggregate"))
+            this.concurrency.set(concurrency)
+        }
+    }
+}
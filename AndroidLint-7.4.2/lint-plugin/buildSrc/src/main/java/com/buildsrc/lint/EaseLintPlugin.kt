@@ -4,16 +4,35 @@ import com.android.build.gradle.internal.dsl.BaseAppModuleExtension
 import com.android.build.gradle.internal.lint.AndroidLintAnalysisTask
 import com.android.build.gradle.internal.plugins.AppPlugin
 import com.android.build.gradle.internal.plugins.LibraryPlugin
+import com.android.build.api.dsl.CommonExtension
+import com.android.build.api.artifact.SingleArtifact
+import com.android.build.api.variant.ApplicationAndroidComponentsExtension
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 import  com.buildsrc.lint.helper.LintConfigExtensionHelper
 import com.buildsrc.lint.helper.LintSlot
 import com.buildsrc.lint.task.EaseLintTask
 import com.buildsrc.lint.helper.LintHookHelper
+import com.buildsrc.lint.helper.LintResultCache
 import com.buildsrc.lint.task.TreatEaseLintResultTask
+import com.buildsrc.lint.task.AggregateEaseLintResultsTask
+import com.buildsrc.lint.helper.TargetManifestService
+import com.buildsrc.lint.helper.TargetResolution
+import com.buildsrc.lint.helper.TargetsKeySource
+import com.buildsrc.lint.task.ResolveEaseLintTargetsTask
+import com.buildsrc.lint.git.GitDiffHelper
+import com.buildsrc.lint.utils.ReferenceIndex
+import com.buildsrc.lint.utils.BaselineStore
+import com.buildsrc.lint.utils.LineRanges
 import org.gradle.api.GradleException
+import org.gradle.api.artifacts.component.ComponentIdentifier
+import org.gradle.api.attributes.Usage
+import org.gradle.api.artifacts.result.ResolvedComponentResult
+import org.gradle.api.artifacts.result.ResolvedDependencyResult
+import org.gradle.api.provider.Provider
 import org.gradle.kotlin.dsl.configure
 import com.buildsrc.easelint.lint.helper.LintWrapperHelper
+import com.buildsrc.kts.Publish
 
 class EaseLintPlugin : Plugin<Project> {
 
@@ -28,39 +47,301 @@ class EaseLintPlugin : Plugin<Project> {
         project.configure<BaseAppModuleExtension> {
             lint.checkOnly.add("LogDetector")
             lint.checkOnly.add("ParseStringDetector")
+            // checkOnly 会关闭其余 issue，引用索引需要在每次扫描时更新
+            lint.checkOnly.add(LintSlot.REFERENCE_INDEX_ISSUE)
             // disable 优先级最高
 //            lint.disable.add("LogDetector")
+            // 存在 EaseLint baseline 时由 treatEaseLintResult 判断是否有新增的错误
+            if (project.file(BaselineStore.FILE_NAME).isFile) lint.abortOnError = false
 
         }
 
+        // 变种 API 只能在 afterEvaluate 之前注册
+        val lintModelInputs = lintModelInputs(project, "debug")
+
         project.afterEvaluate {
 
             LintWrapperHelper.apply27Lib(this, "0.0.1-2023-05-24-10-18-01", true)
 
             val lcg = LintConfigExtensionHelper.findLintConfigExtension(project)
             LintSlot.setExtensionParams(lcg)
+            LintSlot.setTaskParams(project)
 
             val buildType = "Debug"
 
             val lintAnalyzeDebug =
                 project.tasks.getByName("lintAnalyze$buildType") as AndroidLintAnalysisTask
-            LintHookHelper.loadHook(
-                lintAnalyzeDebug.lintTool,
-                project,
-                "0.0.1-2023-06-28-06-30-10"
-            )
+            // 与 lint-api 的发布版本保持一致，修改 LintRequest 后需要发布新版本
+            val hookVersion = Publish.VERSION
+            val hookClasspath = LintHookHelper.resolveHookClasspath(project, hookVersion)
+            // 与 lint-api 中 LintRequest 读取的路径保持一致
+            val easeLintDir = "intermediates/easelint/${buildType.lowercase()}"
+            val targetsFile = project.layout.buildDirectory.file("$easeLintDir/lint-targets.txt")
+            val changedLinesFile =
+                project.layout.buildDirectory.file("$easeLintDir/${LineRanges.FILE_NAME}")
+            val targetsKeyFile =
+                project.layout.buildDirectory.file("$easeLintDir/${TargetResolution.CACHE_KEY_NAME}")
+            val cleanFilesFile =
+                project.layout.buildDirectory.file("$easeLintDir/${LintResultCache.CLEAN_FILES_NAME}")
+            val resultFingerprint = resultFingerprint(project, lintAnalyzeDebug, hookVersion, lintModelInputs)
+
+            // 在配置阶段固定下所有参数，执行阶段不再读取 LintSlot 与 project
+            val gitDiffConfig = LintSlot.gitDiffConfig
+            val fileWhiteList = ArrayList(LintSlot.fileWhiteList)
+            val suffixWhiteList = ArrayList(LintSlot.suffixWhiteList)
+            val projectDir = project.projectDir
+            val expandDependents = LintSlot.expandDependents
+            val changedLinesOnly = LintSlot.changedLinesOnly
+            val narrowScope =
+                project.findProperty(ResolveEaseLintTargetsTask.PROPERTY_NARROW_SCOPE)?.toString() == "true"
+            val rootDir = project.rootDir
+            val manifestService = TargetManifestService.obtain(project)
+            val resolveTargetsTask = project.tasks.register(
+                ResolveEaseLintTargetsTask.TASK_NAME,
+                ResolveEaseLintTargetsTask::class.java
+            ) {
+                if (gitDiffConfig.compareBranch.isEmpty() && gitDiffConfig.compareCommitId.isEmpty()) {
+                    changedFiles.set(emptyList())
+                    allChangedFiles.set(emptyList())
+                    changedLines.set(emptyMap())
+                } else {
+                    val diffService =
+                        GitDiffHelper.obtainService(project, gitDiffConfig, LintSlot.gitDiffEngine)
+                    usesService(diffService)
+                    changedFiles.set(diffService.map { it.filesUnder(projectDir) })
+                    if (expandDependents) {
+                        allChangedFiles.set(diffService.map { it.filesUnder(rootDir) })
+                    } else {
+                        allChangedFiles.set(emptyList())
+                    }
+                    if (changedLinesOnly) {
+                        changedLines.set(diffService.map { service ->
+                            service.linesUnder(projectDir).mapValues { it.value.toString() }
+                        })
+                    } else {
+                        changedLines.set(emptyMap())
+                    }
+                }
+                this.changedLinesOnly.set(changedLinesOnly)
+                this.narrowScope.set(narrowScope)
+                this.changedLinesFile.set(changedLinesFile)
+                this.expandDependents.set(expandDependents)
+                projectDirPath.set(projectDir.absolutePath)
+                if (expandDependents) {
+                    referenceIndexFiles.from(project.rootProject.allprojects.map {
+                        it.layout.buildDirectory.file(ReferenceIndex.INDEX_PATH)
+                    })
+                }
+                compareBranch.set(gitDiffConfig.compareBranch)
+                compareCommitId.set(gitDiffConfig.compareCommitId)
+                this.fileWhiteList.set(fileWhiteList)
+                this.suffixWhiteList.set(suffixWhiteList)
+                this.resultFingerprint.set(resultFingerprint)
+                this.targetsFile.set(targetsFile)
+                this.targetsKeyFile.set(targetsKeyFile)
+                cleanFiles.from(cleanFilesFile)
+                rootDirPath.set(rootDir.absolutePath)
+            }
 
             // 添加新任务 关联到 lintAnalyzeDebug ，来做准备工作
             val lintConfigTask = project.tasks.register(
                 EaseLintTask.TASK_NAME, EaseLintTask::class.java,
+            ) {
+                dependsOn(resolveTargetsTask)
+                lintClasspath.from(lintAnalyzeDebug.lintTool.classpath)
+                this.hookClasspath.from(hookClasspath)
+                lintVersionKey.set(lintAnalyzeDebug.lintTool.versionKey)
+                this.hookVersion.set(hookVersion)
+                lintInProcess.set(
+                    project.findProperty(EaseLintTask.PROPERTY_RUN_LINT_IN_PROCESS)?.toString() != "false"
+                )
+                this.targetsFile.set(targetsFile)
+                this.manifestService.set(manifestService)
+                usesService(manifestService)
+                finalizedBy("lint$buildType")
+            }
+            lintAnalyzeDebug.mustRunAfter(lintConfigTask, resolveTargetsTask)
+            // 扫描范围与 hook 都不在 AGP 的 lint model 中，需要声明为 lintAnalyze 的输入，
+            // 否则构建缓存会把差异扫描与全量扫描的结果混用；
+            // 清单是否属于本次构建由 TargetsKeySource 在执行阶段判断
+            lintAnalyzeDebug.inputs.property(
+                "easeLintTargets",
+                project.providers.of(TargetsKeySource::class.java) {
+                    parameters.targetsFile.set(targetsFile)
+                    parameters.targetsKeyFile.set(targetsKeyFile)
+                }
+            )
+            lintAnalyzeDebug.inputs.property("easeLintHookVersion", hookVersion)
+            // 引用索引由 lint-checks 中的 ReferenceIndexDetector 在分析时写出，声明为输出，
+            // 命中构建缓存时随分析结果一起恢复，不会留下与本次分析不对应的旧索引
+            lintAnalyzeDebug.outputs.file(project.layout.buildDirectory.file(ReferenceIndex.INDEX_PATH))
+                .withPropertyName("easeLintReferenceIndex")
+                .optional()
+            // 在执行阶段读取 resolveEaseLintTargets 的清单，没有目标文件时不再分析；
+            // 清单不属于本次构建（包括被杀掉的 daemon 遗留的空清单）说明没有执行 easeLint，
+            // 与 LintRequest 一样忽略它，保持 lint 默认的全量扫描
+            listOf("lintAnalyze$buildType", "lint$buildType", "lintReport$buildType").forEach {
+                project.tasks.named(it).configure {
+                    onlyIf { TargetResolution.hasTargets(targetsFile.get().asFile) }
+                }
+            }
+            // treatEaseLintResult 只转换本次构建输出的 xml 报告，
+            // 扫描范围属于本次构建时 lintReport 每次都重新输出报告，不沿用之前构建的文件
+            project.tasks.named("lintReport$buildType").configure {
+                outputs.upToDateWhen { !TargetResolution.isLeased(targetsFile.get().asFile) }
+            }
+            val xmlReportFile = project.layout.buildDirectory.file(
+                "reports/lint-results-${buildType.lowercase()}.xml"
+            )
+            val binaryResultFile = project.layout.buildDirectory.file(
+                "reports/easelint/lint-results-${buildType.lowercase()}.bin"
             )
-            lintConfigTask.get().finalizedBy("lint$buildType")
             //添加处理最终结果任务
             val treatEaseLintResultTask = project.tasks.register(
                 TreatEaseLintResultTask.TASK_NAME,
                 TreatEaseLintResultTask::class.java
-            )
+            ) {
+                this.targetsFile.set(targetsFile)
+                this.resultFingerprint.set(resultFingerprint)
+                this.xmlReportFile.set(xmlReportFile)
+                this.changedLinesFile.set(changedLinesFile)
+                this.cleanFilesFile.set(cleanFilesFile)
+                sarifFile.set(
+                    project.layout.buildDirectory.file(
+                        "reports/easelint/lint-results-${buildType.lowercase()}.sarif"
+                    )
+                )
+                binaryFile.set(binaryResultFile)
+                lintVersion.set(lintAnalyzeDebug.lintTool.versionKey)
+                partialResultsDir.set(
+                    project.layout.buildDirectory.dir(
+                        "intermediates/lint_partial_results/${buildType.lowercase()}/out"
+                    )
+                )
+                project.extensions.findByType(CommonExtension::class.java)?.lint?.baseline?.let {
+                    baselineFile.set(it)
+                }
+                easeLintBaselineFile.set(project.layout.projectDirectory.file(BaselineStore.FILE_NAME))
+                updateBaseline.set(project.findProperty(BaselineStore.PROPERTY_UPDATE)?.toString() == "true")
+                this.rootDir.set(project.rootProject.layout.projectDirectory)
+                modulePath.set(project.path)
+                this.projectDir.set(project.layout.projectDirectory)
+            }
             project.tasks.getByName("lintReport$buildType").finalizedBy(treatEaseLintResultTask)
+            // 对外提供二进制结果，由根项目上的 aggregateEaseLintResults 解析后合并，见 EaseLintAggregatePlugin
+            project.configurations.create(AggregateEaseLintResultsTask.ELEMENTS_CONFIGURATION_NAME) {
+                isCanBeConsumed = true
+                isCanBeResolved = false
+                isVisible = false
+                attributes.attribute(
+                    Usage.USAGE_ATTRIBUTE,
+                    project.objects.named(Usage::class.java, AggregateEaseLintResultsTask.USAGE)
+                )
+                outgoing.artifact(binaryResultFile) {
+                    type = AggregateEaseLintResultsTask.ARTIFACT_TYPE
+                    builtBy(treatEaseLintResultTask)
+                }
+            }
+        }
+    }
+
+    /**
+     * 结果缓存的配置指纹：lint 版本、hook 版本、issue 开关与 severity、影响检查范围的选项、
+     * lint.xml、自定义规则包、baseline 以及 lint model 中影响结果的部分（见 [lintModelInputs]），
+     * 任何一项变化后上一次记录的无问题文件都会失效。
+     * 规则包通常是 project 依赖，版本号一直是 unspecified，所以规则包、lint.xml 与 baseline 都按内容计算，
+     * 在执行阶段读取，规则包由 lintRuleJars 携带的任务依赖先构建出来。
+     *
+     * lint 的结果并不只取决于文件自身，其他源文件的签名、被引用的资源等同一 module 中其他文件的变化不在指纹中，
+     * 记录为无问题的文件在这些变化之后也不会重新分析，需要完整结果时用 -PeaseLintResultCache=false 关闭缓存
+     */
+    private fun resultFingerprint(
+        project: Project,
+        lintAnalyze: AndroidLintAnalysisTask,
+        hookVersion: String,
+        lintModelInputs: Provider<String>
+    ): Provider<String> {
+        if (project.findProperty(LintResultCache.PROPERTY_ENABLE)?.toString() == "false") {
+            return project.provider { "" }
+        }
+        val lint = project.extensions.findByType(CommonExtension::class.java)?.lint
+        val checkOnly = lint?.checkOnly.orEmpty().sorted().joinToString(",")
+        val disable = lint?.disable.orEmpty().sorted().joinToString(",")
+        val enable = lint?.enable.orEmpty().sorted().joinToString(",")
+        //lint.xml 与 DSL 中的 severity 同样可以启用 issue 或提升级别
+        val severity = listOf(
+            "fatal" to lint?.fatal,
+            "error" to lint?.error,
+            "warning" to lint?.warning,
+            "informational" to lint?.informational,
+            "ignore" to lint?.ignore
+        ).joinToString(";") { (name, ids) -> name + "=" + ids.orEmpty().sorted().joinToString(",") }
+        val options = if (lint == null) "" else "checkAllWarnings=${lint.checkAllWarnings}" +
+                ",warningsAsErrors=${lint.warningsAsErrors}" +
+                ",checkTestSources=${lint.checkTestSources}" +
+                ",ignoreTestSources=${lint.ignoreTestSources}" +
+                ",checkDependencies=${lint.checkDependencies}"
+        //收窄扫描范围后部分 issue 不会执行，收窄时的无问题文件在不收窄时仍需要分析
+        val narrowScope =
+            project.findProperty(ResolveEaseLintTargetsTask.PROPERTY_NARROW_SCOPE)?.toString() == "true"
+        val lintConfig = lint?.lintConfig ?: project.file("lint.xml")
+        val baseline = lint?.baseline
+        return lintAnalyze.lintTool.versionKey.zip(lintAnalyze.lintRuleJars.elements) { version, jars ->
+            LintResultCache.fingerprint(
+                version,
+                hookVersion,
+                checkOnly,
+                disable,
+                enable,
+                severity,
+                options,
+                "narrowScope=$narrowScope",
+                LintResultCache.contentDigest(jars.map { it.asFile }),
+                LintResultCache.contentDigest(listOf(lintConfig)),
+                LintResultCache.contentDigest(listOfNotNull(baseline))
+            )
+        }.zip(lintModelInputs) { fingerprint, model -> LintResultCache.fingerprint(fingerprint, model) }
+    }
+
+    /**
+     * lint model 中影响结果的部分：合并后的 manifest 与编译依赖的坐标。
+     * 合并后的 manifest 包含 minSdk/targetSdk 与权限，影响 NewApi、MissingPermission 等检查；
+     * 依赖影响引用的解析。都在执行阶段读取，manifest 由产出它的任务先构建出来
+     */
+    private fun lintModelInputs(project: Project, variantName: String): Provider<String> {
+        val mergedManifest = project.objects.fileProperty()
+        val dependencies = project.objects.listProperty(String::class.java)
+        val components = project.extensions.getByType(ApplicationAndroidComponentsExtension::class.java)
+        components.onVariants(components.selector().withName(variantName)) { variant ->
+            mergedManifest.set(variant.artifacts.get(SingleArtifact.MERGED_MANIFEST))
+            dependencies.set(
+                variant.compileConfiguration.incoming.resolutionResult.rootComponent.map {
+                    dependencyCoordinates(it)
+                }
+            )
+        }
+        return mergedManifest.map { LintResultCache.contentDigest(listOf(it.asFile)) }
+            .orElse("")
+            .zip(dependencies) { manifest, coordinates ->
+                LintResultCache.fingerprint(manifest, coordinates.joinToString(","))
+            }
+    }
+
+    /**
+     * 依赖图中所有组件的坐标，按名称排序
+     */
+    private fun dependencyCoordinates(root: ResolvedComponentResult): List<String> {
+        val visited = HashSet<ComponentIdentifier>()
+        val queue = ArrayDeque<ResolvedComponentResult>()
+        queue.add(root)
+        while (queue.isNotEmpty()) {
+            val component = queue.removeFirst()
+            if (!visited.add(component.id)) continue
+            component.dependencies.forEach {
+                if (it is ResolvedDependencyResult) queue.add(it.selected)
+            }
         }
+        visited.remove(root.id)
+        return visited.map { it.displayName }.sorted()
     }
 }
@@ -0,0 +1,102 @@
+package com.buildsrc.lint.git
+
+import com.buildsrc.lint.extensions.GitDiffConfig
+import com.buildsrc.lint.task.LintException
+import com.buildsrc.lint.utils.LineRanges
+import com.buildsrc.lint.utils.log
+import org.gradle.api.Project
+import org.gradle.api.provider.Provider
+import java.io.File
+
+/**
+ * 统一的 git diff 入口，默认使用 [JGitDiffProvider]，失败时回退到 [ShellGitDiffProvider]。
+ *
+ * 差异结果由 [GitDiffService] 在构建级别共享，
+ * 因此同一次构建中相同的对比参数只会计算一次。
+ */
+object GitDiffHelper {
+    const val ENGINE_JGIT = "jgit"
+    const val ENGINE_SHELL = "shell"
+
+    private const val SERVICE_NAME = "easeLintGitDiff"
+
+    fun createProvider(engine: String): GitDiffProvider {
+        return when (engine) {
+            ENGINE_SHELL -> ShellGitDiffProvider()
+            else -> JGitDiffProvider()
+        }
+    }
+
+    /**
+     * 注册（或复用）构建级别的 [GitDiffService]，不同的对比参数对应不同的实例
+     */
+    fun obtainService(
+        project: Project,
+        config: GitDiffConfig,
+        engine: String
+    ): Provider<GitDiffService> {
+        val rootDir = project.rootDir
+        return project.gradle.sharedServices.registerIfAbsent(
+            "$SERVICE_NAME-$engine-${config.compareBranch}-${config.compareCommitId}",
+            GitDiffService::class.java
+        ) {
+            parameters.rootDir.set(rootDir)
+            parameters.compareBranch.set(config.compareBranch)
+            parameters.compareCommitId.set(config.compareCommitId)
+            parameters.engine.set(engine)
+        }
+    }
+
+    /**
+     * @return [project] 目录下的差异文件
+     */
+    fun changedFiles(project: Project, config: GitDiffConfig, engine: String): List<String> {
+        return obtainService(project, config, engine).get().filesUnder(project.projectDir)
+    }
+
+    /**
+     * @return [project] 目录下差异文件中改动过的行
+     */
+    fun changedLines(project: Project, config: GitDiffConfig, engine: String): Map<String, LineRanges> {
+        return obtainService(project, config, engine).get().linesUnder(project.projectDir)
+    }
+
+    fun diff(rootDir: File, config: GitDiffConfig, engine: String): List<String> {
+        val start = System.currentTimeMillis()
+        val files = try {
+            createProvider(engine).changedFiles(rootDir, config).toList()
+        } catch (e: LintException) {
+            //对比的提交不存在等配置错误，换成 shell 也一样会失败
+            throw e
+        } catch (e: Exception) {
+            if (engine == ENGINE_SHELL) throw e
+            "jgit diff failed, fallback to shell:${e.message}".log("GitDiffHelper")
+            ShellGitDiffProvider().changedFiles(rootDir, config).toList()
+        }
+        "diff by $engine cost ${System.currentTimeMillis() - start}ms, ${files.size} files"
+            .log("GitDiffHelper")
+        return files
+    }
+
+    fun diffLines(
+        rootDir: File,
+        config: GitDiffConfig,
+        engine: String,
+        files: Collection<String>
+    ): Map<String, LineRanges> {
+        val start = System.currentTimeMillis()
+        val lines = try {
+            createProvider(engine).changedLines(rootDir, config, files)
+        } catch (e: LintException) {
+            //对比的提交不存在等配置错误，换成 shell 也一样会失败
+            throw e
+        } catch (e: Exception) {
+            if (engine == ENGINE_SHELL) throw e
+            "jgit diff lines failed, fallback to shell:${e.message}".log("GitDiffHelper")
+            ShellGitDiffProvider().changedLines(rootDir, config, files)
+        }
+        "diff lines by $engine cost ${System.currentTimeMillis() - start}ms, ${lines.size} files"
+            .log("GitDiffHelper")
+        return lines
+    }
+}
@@ -0,0 +1,141 @@
+package com.buildsrc.lint.git
+
+import com.buildsrc.lint.extensions.GitDiffConfig
+import com.buildsrc.lint.task.LintException
+import com.buildsrc.lint.utils.LineRanges
+import com.buildsrc.lint.utils.log
+import org.eclipse.jgit.api.Git
+import org.eclipse.jgit.diff.DiffEntry
+import org.eclipse.jgit.diff.DiffFormatter
+import org.eclipse.jgit.diff.Edit
+import org.eclipse.jgit.lib.Constants
+import org.eclipse.jgit.lib.ObjectId
+import org.eclipse.jgit.lib.Repository
+import org.eclipse.jgit.revwalk.RevWalk
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder
+import org.eclipse.jgit.treewalk.CanonicalTreeParser
+import org.eclipse.jgit.treewalk.FileTreeIterator
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup
+import org.eclipse.jgit.util.io.DisabledOutputStream
+import java.io.File
+
+/**
+ * 基于 JGit 在进程内完成 diff，不再为每个 module fork git 进程。
+ * 仓库只打开一次，对比提交记录与对比工作区共用同一个 [Repository]。
+ */
+class JGitDiffProvider : GitDiffProvider {
+
+    override fun changedFiles(rootDir: File, config: GitDiffConfig): Sequence<String> {
+        val paths = openRepository(rootDir).use { repo ->
+            val result = LinkedHashSet<String>()
+            //step1.使用配置的commitId，未配置则查询指定分支最新的commitId
+            val commitId = resolveCompareCommit(repo, config)
+            "finally commitId ${commitId.name}".log("JGitDiffProvider")
+            //step2.找出和指定commitId之间的差异文件
+            result.addAll(diffWithHead(repo, commitId))
+            //step3.对比工作区和上一次提交之间的差异，寻找未提交的改动新增文件
+            result.addAll(diffWorkTree(repo))
+            val workTree = repo.workTree
+            result.map { File(workTree, it).absolutePath }
+        }
+        return paths.asSequence()
+    }
+
+    /**
+     * 直接对比提交记录与工作区，不需要像 [changedFiles] 那样分两步，行号即为工作区中的行号
+     */
+    override fun changedLines(
+        rootDir: File,
+        config: GitDiffConfig,
+        files: Collection<String>
+    ): Map<String, LineRanges> {
+        return openRepository(rootDir).use { repo ->
+            val commitId = resolveCompareCommit(repo, config)
+            val workTree = repo.workTree
+            val prefix = workTree.absolutePath + File.separator
+            val paths = files.filter { it.startsWith(prefix) }
+                .map { it.substring(prefix.length).replace(File.separatorChar, '/') }
+            if (paths.isEmpty()) return emptyMap()
+            val result = HashMap<String, LineRanges>()
+            RevWalk(repo).use { walk ->
+                val oldTree = CanonicalTreeParser().apply {
+                    repo.newObjectReader().use { reset(it, walk.parseCommit(commitId).tree) }
+                }
+                DiffFormatter(DisabledOutputStream.INSTANCE).use { formatter ->
+                    formatter.setRepository(repo)
+                    formatter.setContext(0)
+                    //工作区中未跟踪的文件也会被遍历，只保留需要的文件
+                    formatter.pathFilter = PathFilterGroup.createFromStrings(paths)
+                    formatter.scan(oldTree, FileTreeIterator(repo))
+                        .filter { it.changeType != DiffEntry.ChangeType.DELETE }
+                        .forEach { entry ->
+                            val edits = formatter.toFileHeader(entry).toEditList()
+                            result[File(workTree, entry.newPath).absolutePath] =
+                                LineRanges.of(edits.map { it.toLineRange() })
+                        }
+                }
+            }
+            result
+        }
+    }
+
+    private fun openRepository(rootDir: File): Repository {
+        return FileRepositoryBuilder()
+            .readEnvironment()
+            .findGitDir(rootDir)
+            .setMustExist(true)
+            .build()
+    }
+
+    /**
+     * [Edit] 的 beginB、endB 从 0 开始且不包含 endB，转换为从 1 开始的闭区间
+     */
+    private fun Edit.toLineRange(): IntRange {
+        return if (endB > beginB) {
+            (beginB + 1)..endB
+        } else {
+            beginB.coerceAtLeast(1)..(beginB + 1)
+        }
+    }
+
+    /**
+     * 配置的提交或分支不存在（拼写错误、没有 fetch）时直接失败，
+     * 不能退化为只对比工作区，否则会悄悄漏掉已提交的改动
+     */
+    private fun resolveCompareCommit(repo: Repository, config: GitDiffConfig): ObjectId {
+        if (config.compareCommitId.isNotEmpty()) {
+            return repo.resolve(config.compareCommitId)
+                ?: throw LintException("Can not resolve compareCommitId: ${config.compareCommitId}")
+        }
+        //待对比分支，未指定则默认使用远程master分支
+        val branch = config.compareBranch.ifEmpty { "origin" }
+        return repo.resolve(branch) ?: repo.resolve("refs/remotes/$branch/HEAD")
+            ?: throw LintException("Can not resolve compareBranch: $branch")
+    }
+
+    private fun diffWithHead(repo: Repository, commitId: ObjectId): List<String> {
+        val head = repo.resolve(Constants.HEAD) ?: return emptyList()
+        return RevWalk(repo).use { walk ->
+            val oldTree = walk.parseCommit(commitId).tree
+            val newTree = walk.parseCommit(head).tree
+            DiffFormatter(DisabledOutputStream.INSTANCE).use { formatter ->
+                formatter.setRepository(repo)
+                formatter.scan(oldTree, newTree)
+                    .filter { it.changeType != DiffEntry.ChangeType.DELETE }
+                    .map { it.newPath }
+            }
+        }
+    }
+
+    /**
+     * 等价于 git diff HEAD --name-only：暂存区与工作区中相对 HEAD 新增和修改的文件
+     */
+    private fun diffWorkTree(repo: Repository): Set<String> {
+        val status = Git.wrap(repo).status().call()
+        return LinkedHashSet<String>().apply {
+            addAll(status.added)
+            addAll(status.changed)
+            addAll(status.modified)
+        }
+    }
+}
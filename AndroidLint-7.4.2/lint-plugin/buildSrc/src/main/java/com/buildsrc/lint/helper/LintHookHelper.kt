@@ -1,16 +1,19 @@
 package com.buildsrc.lint.helper
 
 import com.android.build.gradle.internal.lint.AndroidLintWorkAction
-import com.android.build.gradle.internal.lint.LintFromMaven
-import com.android.build.gradle.internal.lint.LintTool
 import com.android.utils.JvmWideVariable
+import com.buildsrc.lint.utils.log
 import com.google.common.reflect.TypeToken
 import org.gradle.api.Project
 import org.gradle.api.Task
+import org.gradle.api.file.FileCollection
 import org.gradle.api.logging.Logging
+import java.io.File
 import java.lang.ref.SoftReference
 import java.net.URI
 import java.net.URLClassLoader
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicInteger
 
 object LintHookHelper {
     // 用于保持与 com.android.tools.lint.Main.java classLoader 一致
@@ -36,6 +39,22 @@ object LintHookHelper {
             object : TypeToken<MutableMap<String, SoftReference<URLClassLoader>>>() {}
         ) { HashMap() }
 
+    /**
+     * EaseLint 自己的 classloader 缓存，key 为 lint 版本 + hook 版本 + classpath 摘要。
+     * 不能直接以 lint 版本为 key 查询 [cachedClassloader]：AGP 可能已经为同一个版本创建了没有 hook 的 classloader，
+     * hook 版本变化后也会取到旧的 classloader
+     */
+    private val hookedClassloader: JvmWideVariable<MutableMap<String, SoftReference<URLClassLoader>>> =
+        JvmWideVariable(
+            AndroidLintWorkAction::class.java,
+            "easeLintHookedClassloader",
+            object : TypeToken<MutableMap<String, SoftReference<URLClassLoader>>>() {}
+        ) { HashMap() }
+
+    //当前 buildSrc 生命周期内 hookedClassloader 的命中与未命中次数
+    private val hitCount = AtomicInteger()
+    private val missCount = AtomicInteger()
+
     private fun createClassLoader(key: String, classpath: List<URI>): URLClassLoader {
         logger.info("Android Lint: Creating lint class loader {}", key)
         val classpathUrls = classpath.map { it.toURL() }.toTypedArray()
@@ -52,12 +71,13 @@ object LintHookHelper {
         return lintMainClassLoader.loadClass(name)
     }
 
-    fun loadHook(lintTool: LintTool, project: Project, version: String) {
+    /**
+     * 在配置阶段声明 hook 包的依赖，真正的解析与加载放到任务执行时
+     */
+    fun resolveHookClasspath(project: Project, version: String): FileCollection {
         val group = "com.easelint.snapshot"
         val name = "30.4.2-lint-api"
-        // 创建 classLoader 将自己的 maven包排在最前面 先喂给 cachedClassloader
-        val sysLintFiles: List<URI> = lintTool.classpath.files.map { it.toURI() }
-        val config = project.configurations.detachedConfiguration(
+        return project.configurations.detachedConfiguration(
             project.dependencies.create(
                 mapOf(
                     "group" to group,
@@ -69,22 +89,57 @@ object LintHookHelper {
             isTransitive = true
             isCanBeResolved = true
         }
-        val hookMavenConfig = LintFromMaven(config, version)
-        val hookFiles = hookMavenConfig.files.files.map { it.toURI() }
+    }
+
+    fun loadHook(
+        versionKey: String,
+        hookVersion: String,
+        lintClasspath: Set<File>,
+        hookClasspath: Set<File>
+    ) {
+        val start = System.currentTimeMillis()
+        // 创建 classLoader 将自己的 maven包排在最前面 先喂给 cachedClassloader
         val summaryFiles = LinkedHashSet<URI>()
-        summaryFiles.addAll(hookFiles)
-        summaryFiles.addAll(sysLintFiles)
+        summaryFiles.addAll(hookClasspath.map { it.toURI() })
+        summaryFiles.addAll(lintClasspath.map { it.toURI() })
 
-        val key = lintTool.versionKey.get()
-        lintMainClassLoader = cachedClassloader.executeCallableSynchronously {
+        val prefix = "$versionKey|$hookVersion|"
+        val key = prefix + classpathDigest(hookClasspath + lintClasspath)
+        var hit = true
+        val classloader = hookedClassloader.executeCallableSynchronously {
+            val map = hookedClassloader.get()
+            // 同一个 lint 版本只保留当前 hook 版本与 classpath 对应的 classloader，旧的尽快释放
+            map.keys.removeAll { it != key && (it.startsWith("$versionKey|") || map[it]?.get() == null) }
+            map[key]?.get() ?: createClassLoader(key, summaryFiles.toList()).also {
+                map[key] = SoftReference(it)
+                hit = false
+            }
+        }
+        // AGP 的 lint 任务按 versionKey 从 cachedClassloader 中取 classloader，
+        // 已有的不是当前带 hook 的 classloader 时直接覆盖
+        cachedClassloader.executeCallableSynchronously {
             val map = cachedClassloader.get()
-            val classloader = map[key]?.get()?.also {
-                logger.info("Android Lint: Reusing lint classloader {}", key)
-            } ?: createClassLoader(key, summaryFiles.toList())
-                .also { map[key] = SoftReference(it) }
-            classloader
+            if (map[versionKey]?.get() !== classloader) {
+                logger.info("Android Lint: Replacing lint classloader {} with hooked one", versionKey)
+                map[versionKey] = SoftReference(classloader)
+            }
         }
+        lintMainClassLoader = classloader
         lintRequestClass =
             lintMainClassLoader.loadClass("com.android.tools.lint.client.api.LintRequest")
+        if (hit) hitCount.incrementAndGet() else missCount.incrementAndGet()
+        ("hook classloader ${if (hit) "hit" else "miss"} cost ${System.currentTimeMillis() - start}ms," +
+                " hit:${hitCount.get()} miss:${missCount.get()}").log("LintHookHelper")
+    }
+
+    /**
+     * classpath 中每个文件的路径、大小与修改时间的 sha256，本地重新发布同一版本的 hook 包时也能区分
+     */
+    private fun classpathDigest(classpath: Collection<File>): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        classpath.map { "${it.absolutePath}:${it.length()}:${it.lastModified()}" }
+            .sorted()
+            .forEach { digest.update(it.toByteArray(Charsets.UTF_8)) }
+        return digest.digest().take(8).joinToString("") { String.format("%02x", it) }
     }
-}
\ No newline at end of file
+}
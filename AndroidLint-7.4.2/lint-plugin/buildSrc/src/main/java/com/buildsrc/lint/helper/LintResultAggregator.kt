@@ -0,0 +1,188 @@
+package com.buildsrc.lint.helper
+
+import com.buildsrc.lint.utils.LintResultBinary
+import com.buildsrc.lint.utils.LintResultParser
+import com.buildsrc.lint.utils.LintResultRecord
+import com.buildsrc.lint.utils.log
+import java.io.File
+import java.net.URLEncoder
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 把所有 module 的扫描结果合并成一份去重、带索引的报告，CI 只需要读取根目录下的一个文件。
+ *
+ * [outputDir] 中的文件：
+ * lint-results.bin：合并后的结果，格式见 [LintResultBinary]
+ * lint-results.idx：索引，每个 module 在 bin 中的字节偏移与条数，以及按 issue、severity 的计数
+ * modules/：每个 module 去重后的分段以及来源文件的签名，来源文件没变的 module 直接复用分段
+ */
+class LintResultAggregator(
+    private val outputDir: File,
+    private val concurrency: Int
+) {
+    /**
+     * 一个 module 的结果来源，优先读取二进制结果，没有或已过期时解析 xml
+     */
+    class ModuleResult(
+        val modulePath: String,
+        val binary: File?,
+        val xml: File?,
+        val projectDir: File?
+    ) {
+        fun source(): File? {
+            val binary = binary?.takeIf { it.isFile }
+            val xml = xml?.takeIf { it.isFile }
+            return when {
+                binary != null && (xml == null || binary.lastModified() >= xml.lastModified()) -> binary
+                else -> xml
+            }
+        }
+    }
+
+    class Result(val total: Int, val modules: Int, val rebuilt: Int)
+
+    private val segmentDir = File(outputDir, "modules")
+    private val mergedFile = File(outputDir, MERGED_NAME)
+    private val indexFile = File(outputDir, INDEX_NAME)
+    private val stateFile = File(outputDir, "aggregate.sig")
+
+    fun aggregate(modules: List<ModuleResult>): Result {
+        segmentDir.mkdirs()
+        val sorted = modules.sortedBy { it.modulePath }
+        val signatures = LinkedHashMap<ModuleResult, String>()
+        sorted.forEach { module ->
+            val source = module.source() ?: return@forEach
+            signatures[module] = "${source.absolutePath}\t${source.length()}\t${source.lastModified()}"
+        }
+        val stale = signatures.filter { (module, signature) ->
+            val segment = segmentOf(module)
+            !segment.isFile || signatureOf(segment).readTextOrEmpty() != signature
+        }
+        rebuildSegments(stale)
+        val state = signatures.map { (module, signature) -> "${module.modulePath}\t$signature" }
+            .joinToString("\n")
+        if (stale.isEmpty() && mergedFile.isFile && indexFile.isFile && stateFile.readTextOrEmpty() == state) {
+            "no module changed, reuse ${mergedFile.absolutePath}".log(TAG)
+            return Result(readTotal(), signatures.size, 0)
+        }
+        val total = merge(signatures.keys.toList())
+        stateFile.writeText(state)
+        return Result(total, signatures.size, stale.size)
+    }
+
+    /**
+     * 并行重建来源文件有变化的 module 分段，分段内按记录去重
+     */
+    private fun rebuildSegments(stale: Map<ModuleResult, String>) {
+        if (stale.isEmpty()) return
+        val threads = concurrency.coerceIn(1, stale.size)
+        val index = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(threads) { runnable ->
+            Thread(runnable, "easelint-aggregate-${index.incrementAndGet()}").apply { isDaemon = true }
+        }
+        try {
+            val futures = stale.map { (module, signature) ->
+                executor.submit(Callable { rebuildSegment(module, signature) })
+            }
+            futures.forEach {
+                try {
+                    it.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    private fun rebuildSegment(module: ModuleResult, signature: String) {
+        val source = module.source() ?: return
+        val segment = segmentOf(module)
+        val tmp = File(segment.parentFile, "${segment.name}.tmp")
+        val seen = HashSet<String>()
+        LintResultBinary.Writer(tmp.outputStream()).use { writer ->
+            val action: (LintResultRecord) -> Unit = {
+                if (seen.add(keyOf(it))) writer.write(it)
+            }
+            if (source == module.binary) {
+                LintResultBinary.read(source, action)
+            } else {
+                LintResultParser.parse(source, module.projectDir, action)
+            }
+        }
+        segment.delete()
+        tmp.renameTo(segment)
+        signatureOf(segment).writeText(signature)
+    }
+
+    /**
+     * 按 module 路径顺序拼接分段，跨 module 重复的问题（比如依赖的 library 被多个 module 扫描）只保留第一次出现的。
+     * 去重保存完整的 key，不同的问题不会因为 hash 冲突被丢弃
+     */
+    private fun merge(modules: List<ModuleResult>): Int {
+        val seen = HashSet<String>()
+        val byIssue = LinkedHashMap<String, Int>()
+        val bySeverity = LinkedHashMap<String, Int>()
+        val index = StringBuilder()
+        val tmp = File(outputDir, "$MERGED_NAME.tmp")
+        var total = 0
+        LintResultBinary.Writer(tmp.outputStream()).use { writer ->
+            modules.forEach { module ->
+                val offset = writer.position
+                val first = writer.count
+                LintResultBinary.read(segmentOf(module)) {
+                    if (seen.add(keyOf(it))) {
+                        writer.write(it)
+                        byIssue[it.id] = (byIssue[it.id] ?: 0) + 1
+                        bySeverity[it.severity] = (bySeverity[it.severity] ?: 0) + 1
+                    }
+                }
+                index.append("module\t${module.modulePath}\t$offset\t${writer.count - first}\n")
+            }
+            total = writer.count
+        }
+        byIssue.toSortedMap().forEach { (id, count) -> index.append("issue\t$id\t$count\n") }
+        bySeverity.forEach { (severity, count) -> index.append("severity\t$severity\t$count\n") }
+        mergedFile.delete()
+        tmp.renameTo(mergedFile)
+        indexFile.writeText("$INDEX_HEADER $total\n$index")
+        "modules:${modules.size} total:$total ${mergedFile.absolutePath}".log(TAG)
+        return total
+    }
+
+    private fun readTotal(): Int {
+        val header = indexFile.useLines { it.firstOrNull() }.orEmpty()
+        return header.substringAfterLast(' ').toIntOrNull() ?: 0
+    }
+
+    /**
+     * 分段文件名需要与 module 路径一一对应，:a:b 与 :a_b 不能落到同一个文件，
+     * 所以对完整路径做 URL 编码，":" 编码为 %3A，"%" 本身也会被编码
+     */
+    private fun segmentOf(module: ModuleResult): File {
+        val name = URLEncoder.encode(module.modulePath, "UTF-8")
+        return File(segmentDir, "$name.bin")
+    }
+
+    private fun signatureOf(segment: File) = File(segment.parentFile, "${segment.name}.sig")
+
+    private fun File.readTextOrEmpty(): String = if (isFile) readText() else ""
+
+    private fun keyOf(record: LintResultRecord): String {
+        return "${record.id}\u0000${record.file}\u0000${record.line}\u0000${record.column}\u0000${record.message}"
+    }
+
+    companion object {
+        private const val TAG = "LintResultAggregator"
+        private const val INDEX_HEADER = "#easelint-aggregate v1"
+        const val MERGED_NAME = "lint-results.bin"
+        const val INDEX_NAME = "lint-results.idx"
+
+        //-PeaseLintAggregateConcurrency=4 合并时的最大并发数，默认为 cpu 核数
+        const val PROPERTY_CONCURRENCY = "easeLintAggregateConcurrency"
+    }
+}
@@ -0,0 +1,86 @@
+package com.buildsrc.lint.helper
+
+import java.io.File
+import java.security.MessageDigest
+
+/**
+ * 记录上一次扫描没有任何问题的文件，内容与扫描配置都没变时 hook 后的 LintRequest 直接跳过这些文件。
+ *
+ * 7.4.2 的 lint 分析与报告拆成了 lintAnalyze/lintReport 两个任务，无法把缓存的 warning 合并回报告，
+ * 所以这里只缓存"无问题"这一种结果，跳过的文件本来就不会出现在报告里。
+ *
+ * key = sha256(配置指纹 + 文件绝对路径 + 文件内容 sha256)，计算方式需与 lint-api 中的 LintRequest 保持一致。
+ * 配置指纹包含合并后的 manifest 与依赖坐标，见 EaseLintPlugin.resultFingerprint；
+ * 同一 module 中其他文件的变化不在 key 中，记录为无问题的文件之后仍可能因为它们出现新的问题。
+ * 缓存文件位于 <buildDir>/intermediates/easelint/<variant>/clean-files.txt，每行一个 key
+ */
+object LintResultCache {
+    //-PeaseLintResultCache=false 关闭缓存
+    const val PROPERTY_ENABLE = "easeLintResultCache"
+
+    const val CLEAN_FILES_NAME = "clean-files.txt"
+
+    //只保留最近的记录，避免文件无限增长
+    private const val MAX_KEYS = 50000
+
+    /**
+     * 计算配置指纹，任何会影响 lint 结果的参数变化后缓存自动失效
+     */
+    fun fingerprint(vararg parts: String): String = sha256(*parts)
+
+    /**
+     * 按内容计算一组文件的摘要，不存在的文件忽略，目录展开为其中的文件
+     */
+    fun contentDigest(files: Collection<File>): String {
+        val parts = files.flatMap { file -> file.walkTopDown().filter { it.isFile }.toList() }
+            .sortedBy { it.path }
+            .map { "${it.name}:${sha256(it.readBytes())}" }
+        return sha256(*parts.toTypedArray())
+    }
+
+    fun keyOf(fingerprint: String, file: File): String? {
+        if (!file.isFile) return null
+        return sha256(fingerprint, file.absolutePath, sha256(file.readBytes()))
+    }
+
+    /**
+     * 追加本次扫描没有问题的文件
+     */
+    fun record(cleanFiles: File, keys: Collection<String>) {
+        if (keys.isEmpty()) return
+        val all = LinkedHashSet<String>()
+        if (cleanFiles.isFile) {
+            cleanFiles.forEachLine { if (it.isNotEmpty()) all.add(it) }
+        }
+        //重新记录的 key 移到末尾
+        all.removeAll(keys)
+        all.addAll(keys)
+        val keep = all.toList().takeLast(MAX_KEYS)
+        cleanFiles.parentFile?.mkdirs()
+        cleanFiles.bufferedWriter().use { writer ->
+            keep.forEach {
+                writer.write(it)
+                writer.newLine()
+            }
+        }
+    }
+
+    private fun sha256(vararg parts: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        parts.forEach {
+            digest.update(it.toByteArray(Charsets.UTF_8))
+            digest.update(0.toByte())
+        }
+        return digest.digest().toHex()
+    }
+
+    private fun sha256(bytes: ByteArray): String {
+        return MessageDigest.getInstance("SHA-256").digest(bytes).toHex()
+    }
+
+    private fun ByteArray.toHex(): String {
+        val builder = StringBuilder(size * 2)
+        forEach { builder.append(String.format("%02x", it)) }
+        return builder.toString()
+    }
+}
@@ -3,9 +3,10 @@ package com.buildsrc.lint.helper
 import com.buildsrc.lint.utils.log
 import com.buildsrc.lint.extensions.GitDiffConfig
 import com.buildsrc.lint.extensions.LintConfigExtension
+import com.buildsrc.lint.git.GitDiffHelper
 import com.buildsrc.lint.task.LintException
+import com.buildsrc.lint.utils.WhiteListMatcher
 import org.gradle.api.Project
-import java.io.ByteArrayOutputStream
 import java.io.File
 import java.util.*
 
@@ -19,11 +20,17 @@ object LintSlot {
         SUFFIX_WHITE_LIST("suffixWhiteList"),
         COMPARE_BRANCH("compareBranch"),
         COMPARE_COMMIT_ID("compareCommitId"),
+        GIT_DIFF_ENGINE("gitDiffEngine"),
+        EXPAND_DEPENDENTS("expandDependents"),
+        CHANGED_LINES_ONLY("changedLinesOnly"),
     }
 
     private const val PARAMS_TYPE_EXTENSION = "set extension params"
     private const val PARAMS_TYPE_TASK = "overwrite task params"
 
+    //lint-checks 中生成引用索引的 issue
+    const val REFERENCE_INDEX_ISSUE = "ReferenceIndexDetector"
+
     //扫描文件白名单
     private val fileWhiteList_: LinkedList<String> = LinkedList()
     val fileWhiteList = fileWhiteList_
@@ -33,7 +40,18 @@ object LintSlot {
     val suffixWhiteList = suffixWhiteList_
 
     //git筛选文件配置
-    private var gitDiffConfig = GitDiffConfig()
+    var gitDiffConfig = GitDiffConfig()
+        private set
+
+    //git diff 的实现方式，默认进程内的 jgit，可通过 -PgitDiffEngine=shell 切换为命令行
+    var gitDiffEngine = GitDiffHelper.ENGINE_JGIT
+        private set
+
+    //是否把引用了改动类的文件也加入扫描，依赖上一次扫描生成的引用索引，可通过 -PexpandDependents=true 开启
+    var expandDependents = false
+
+    //是否只报告改动过的行上的问题，未改动的行上已有的问题不再输出，可通过 -PchangedLinesOnly=true 开启
+    var changedLinesOnly = false
 
     /**
      * 设置在build.gradle中配置的extension参数
@@ -51,7 +69,7 @@ object LintSlot {
      *
      * @param project
      */
-    private fun setTaskParams(project: Project) {
+    fun setTaskParams(project: Project) {
         val fileWhiteList = getParamList(project, TaskParams.FILE_WHITE_LIST.paramName)
         if (fileWhiteList.isNotEmpty()) {
             clearWhiteList()
@@ -69,6 +87,27 @@ object LintSlot {
         if (compareBranch.isNotEmpty() || compareCommitId.isNotEmpty()) {
             setGitDiffConfig(GitDiffConfig(compareBranch, compareCommitId), PARAMS_TYPE_TASK)
         }
+
+        val gitDiffEngine = getParamsString(project, TaskParams.GIT_DIFF_ENGINE.paramName)
+        //没有传参数时恢复默认值，避免沿用 daemon 中上一次构建的参数
+        this.gitDiffEngine = gitDiffEngine.ifEmpty { GitDiffHelper.ENGINE_JGIT }
+        if (gitDiffEngine.isNotEmpty()) {
+            "gitDiffEngine:$gitDiffEngine".log(PARAMS_TYPE_TASK)
+        }
+
+        val expandDependents = getParamsString(project, TaskParams.EXPAND_DEPENDENTS.paramName)
+        //没有传参数时恢复默认值，避免沿用 daemon 中上一次构建的参数
+        this.expandDependents = expandDependents.toBoolean()
+        if (expandDependents.isNotEmpty()) {
+            "expandDependents:$expandDependents".log(PARAMS_TYPE_TASK)
+        }
+
+        val changedLinesOnly = getParamsString(project, TaskParams.CHANGED_LINES_ONLY.paramName)
+        //LintSlot 在 daemon 中一直存在，没有传参数时恢复默认值，上一次构建的参数不会带到本次
+        this.changedLinesOnly = changedLinesOnly.toBoolean()
+        if (changedLinesOnly.isNotEmpty()) {
+            "changedLinesOnly:$changedLinesOnly".log(PARAMS_TYPE_TASK)
+        }
     }
 
     /**
@@ -80,15 +119,17 @@ object LintSlot {
     private fun addFileWhiteList(filePaths: List<String>, type: String) {
         filePaths.forEach {
             val itemPath = it.split("/")
-            if (itemPath.size < 4) {
+            if (itemPath.size < 4 && !WhiteListMatcher.isGlob(it)) {
                 //路径小于4级，不规范
                 throw LintException(
                     "Invalid whitelist file path," +
                             " a minimum of 4 levels of directory is required: $it"
                 )
             } else {
-                //路径规范，添加至白名单
-                fileWhiteList_.add(it.replace("/", File.separator))
+                //路径规范，添加至白名单，glob 保持原样
+                fileWhiteList_.add(
+                    if (WhiteListMatcher.isGlob(it)) it else it.replace("/", File.separator)
+                )
             }
         }
         "fileWhiteList:$fileWhiteList_".log(type)
@@ -117,28 +158,6 @@ object LintSlot {
         clearSuffixWhiteList()
     }
 
-    fun finalTargets(project: Project): List<File> {
-        //在获取最终检查的文件前，先配置gradlew命令中的参数
-        setTaskParams(project)
-        val files = LinkedList<File>()
-        //在手动配置的文件列表中插入git diff查询出的差异文件
-        val targetFiles = addGitDiffTarget(project)
-        //先将所有文件路径去重
-        targetFiles.distinct().forEach { t ->
-            //判断文件白名单
-            if (!fileWhiteList.firstOrNull { t.contains(it) }.isNullOrEmpty()) return@forEach
-            //判断文件后缀白名单
-            if (!suffixWhiteList.firstOrNull { t.endsWith(it) }.isNullOrEmpty()) return@forEach
-            val file = File(t)
-            if (file.exists()) {
-                files.add(file)
-            } else {
-                "this file[$t] is not exists".log("EaseLintReflectiveLintRunner")
-            }
-        }
-        return files
-    }
-
     /**
      * 获取gradlew命令中配置的list类型参数
      *
@@ -168,71 +187,4 @@ object LintSlot {
             ""
         }
     }
-
-    private fun addGitDiffTarget(project: Project): List<String> {
-        if (gitDiffConfig.compareBranch.isEmpty() && gitDiffConfig.compareCommitId.isEmpty())
-            return emptyList()
-        val targetList = LinkedList<String>()
-        val pathList = LinkedList<String>()
-
-        //=============git diff指令开始==============
-        //step1.使用配置的commitId，未配置则先查询指定分支最新的commitId
-        val commitId = gitDiffConfig.compareCommitId.ifEmpty {
-            //待对比分支，未指定则默认使用远程master分支
-            val branch = gitDiffConfig.compareBranch.ifEmpty { "origin" }
-            //查询指定分支上最新的commitId
-            val bos = ByteArrayOutputStream()
-            project.rootProject.exec {
-                standardOutput = bos
-                setCommandLine("git", "log", branch, "--pretty=%h", "--max-count=1")
-            }
-            val commitList = bos.toString().split("\n")
-            bos.close()
-            if (commitList.isNotEmpty()) commitList[0] else ""
-        }
-        "finally commitId $commitId".log("addGitDiffTarget")
-        //step2.找出和指定commitId之间的差异文件
-        val bos = ByteArrayOutputStream()
-        project.rootProject.exec {
-            standardOutput = bos
-            setCommandLine("git", "diff", commitId, "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
-        }
-        val fileListStr = bos.toString()
-        pathList.addAll(fileListStr.split("\n"))
-        bos.reset()
-
-        /*
-        step3.
-        上面的git diff命令只能比较两次提交记录间的差异，适合在CI上执行。
-        但是也需要本地执行，因此需要加上对比工作区和上一次提交之间的差异，
-        寻找未提交的改动新增文件
-         */
-        project.exec {
-            standardOutput = bos
-            setCommandLine("git", "diff", "HEAD", "--name-only", "--diff-filter=ACMRTUXB")
-        }
-        val cachedFileListStr = bos.toString()
-        pathList.addAll(cachedFileListStr.split("\n"))
-        bos.close()
-        //=============git diff指令结束==============
-        //截取项目绝对路径的最后一个文件夹名作为项目名称
-        val projectName = project.rootDir.absolutePath.substringAfterLast(File.separator)
-        pathList.forEach {
-            if (it.isEmpty()) return@forEach
-            /*
-            从git指令中获取到的文件路径是相对路径，
-            路径开头可能和从project.rootDir获取到
-            的根目录绝对路径有重复。因此通过项目名称来
-            来截取相对路径，去掉多余路径，避免Lint加载
-            文件失败。且git diff获取到的文件路径分隔符
-            为/，统一替换成当前系统分隔符
-             */
-            targetList.add(
-                "${project.rootDir}${
-                    it.substringAfter(projectName).replace("/", File.separator)
-                }"
-            )
-        }
-        return targetList
-    }
-}
\ No newline at end of file
+}
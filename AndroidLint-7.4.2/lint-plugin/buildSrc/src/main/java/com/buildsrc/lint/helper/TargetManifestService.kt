@@ -0,0 +1,58 @@
+package com.buildsrc.lint.helper
+
+import com.buildsrc.lint.utils.log
+import org.gradle.api.Project
+import org.gradle.api.provider.Provider
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+import java.io.File
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 把扫描清单限定在执行了 easeLint 的这一次构建中。
+ *
+ * 带 hook 的 classloader 会一直留在 daemon 中 AGP 的 classloader 缓存里，之后单独执行的 lintDebug 也会读取清单。
+ * easeLint 执行时生成本次构建的 token，写入清单旁的 lease 文件并登记为系统属性，
+ * LintRequest 与插件中的任务只在 lease 中的 token 已登记时使用清单（见 TargetResolution.isLeased）；
+ * 构建结束时（包括失败与取消）清除系统属性并删除 lease 文件，之后的 lintDebug 恢复为全量扫描。
+ * token 不写进清单，清单本身只取决于扫描参数，输入不变时 ResolveEaseLintTargetsTask 可以 UP-TO-DATE
+ */
+abstract class TargetManifestService : BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    //系统属性名 -> 构建结束时需要删除的 lease 文件
+    private val leases = ConcurrentHashMap<String, File>()
+
+    /**
+     * 登记 [manifest] 在本次构建中有效
+     */
+    fun lease(manifest: File) {
+        val token = UUID.randomUUID().toString()
+        val property = TargetResolution.tokenProperty(token)
+        System.setProperty(property, "true")
+        val lease = TargetResolution.leaseOf(manifest)
+        leases[property] = lease
+        lease.parentFile?.mkdirs()
+        lease.writeText(token)
+    }
+
+    override fun close() {
+        leases.forEach { (property, lease) ->
+            System.clearProperty(property)
+            lease.delete()
+        }
+        "release target manifests:${leases.size}".log(SERVICE_NAME)
+        leases.clear()
+    }
+
+    companion object {
+        private const val SERVICE_NAME = "easeLintTargetManifest"
+
+        fun obtain(project: Project): Provider<TargetManifestService> {
+            return project.gradle.sharedServices.registerIfAbsent(
+                SERVICE_NAME,
+                TargetManifestService::class.java
+            ) {}
+        }
+    }
+}
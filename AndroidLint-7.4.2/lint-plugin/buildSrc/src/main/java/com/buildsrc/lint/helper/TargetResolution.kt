@@ -0,0 +1,161 @@
+package com.buildsrc.lint.helper
+
+import com.buildsrc.lint.utils.WhiteListMatcher
+import com.buildsrc.lint.utils.log
+import java.io.File
+import java.util.Collections
+
+/**
+ * 一次目标文件解析的结果，同一次构建中每个 module 只解析一次，所有使用方共享，不可修改。
+ *
+ * @param files 最终需要扫描的文件
+ * @param missingFiles 解析出来但磁盘上已不存在的文件路径
+ */
+class TargetResolution(files: List<File>, missingFiles: List<String>) {
+    val files: List<File> = Collections.unmodifiableList(ArrayList(files))
+    val missingFiles: List<String> = Collections.unmodifiableList(ArrayList(missingFiles))
+
+    fun isEmpty(): Boolean = files.isEmpty()
+
+    /**
+     * 写出目标文件清单：开头为 # 开头的头信息，之后每行一个文件绝对路径
+     *
+     * @param fingerprint 结果缓存的配置指纹，为空时不使用缓存
+     * @param narrowScope 是否按目标文件类型收窄 lint 的扫描范围，由 LintRequest 读取
+     */
+    fun writeTo(output: File, fingerprint: String = "", narrowScope: Boolean = false) {
+        output.parentFile?.mkdirs()
+        output.bufferedWriter().use { writer ->
+            writer.write("$MANIFEST_HEADER ${files.size}")
+            writer.newLine()
+            if (fingerprint.isNotEmpty()) {
+                writer.write("$FINGERPRINT_PREFIX$fingerprint")
+                writer.newLine()
+            }
+            if (narrowScope) {
+                writer.write(NARROW_SCOPE_HEADER)
+                writer.newLine()
+            }
+            files.forEach {
+                writer.write(it.absolutePath)
+                writer.newLine()
+            }
+        }
+    }
+
+    /**
+     * 写出与机器无关的扫描范围：开头为 # 开头的头信息，之后每行一个相对 [rootDir] 的路径，按路径排序。
+     * 作为 lintAnalyze 的输入，相同的差异在不同 CI 机器上得到相同的缓存 key
+     *
+     * @param analyzed 实际交给 lint 分析的文件，已去除上一次没有问题的文件
+     * @param narrowScope 收窄扫描范围后部分 issue 不会执行，与不收窄时的结果不能混用
+     */
+    fun writeCacheKey(output: File, analyzed: List<File>, rootDir: File, narrowScope: Boolean = false) {
+        val root = rootDir.absolutePath + File.separator
+        val paths = analyzed.map {
+            val path = it.absolutePath
+            if (path.startsWith(root)) path.substring(root.length).replace('\\', '/') else path
+        }.sorted()
+        output.parentFile?.mkdirs()
+        output.bufferedWriter().use { writer ->
+            writer.write("$CACHE_KEY_HEADER ${paths.size}")
+            writer.newLine()
+            if (narrowScope) {
+                writer.write(NARROW_SCOPE_HEADER)
+                writer.newLine()
+            }
+            paths.forEach {
+                writer.write(it)
+                writer.newLine()
+            }
+        }
+    }
+
+    override fun toString(): String {
+        return "TargetResolution(files=${files.size}, missingFiles=${missingFiles.size})"
+    }
+
+    companion object {
+        private const val MANIFEST_HEADER = "#easelint-targets v1"
+        private const val FINGERPRINT_PREFIX = "#fingerprint="
+        private const val CACHE_KEY_HEADER = "#easelint-targets-key v1"
+
+        //与 lint-api 中的 LintRequest 保持一致
+        private const val NARROW_SCOPE_HEADER = "#narrowScope=true"
+
+        const val CACHE_KEY_NAME = "lint-targets.key"
+
+        //没有本次构建的清单时 lintAnalyze 使用的扫描范围，与任何 writeCacheKey 写出的内容都不同
+        const val FULL_SCAN_KEY = "$CACHE_KEY_HEADER full"
+
+        //与 lint-api 中的 LintRequest 保持一致
+        private const val LEASE_NAME = "lint-targets.lease"
+        private const val TOKEN_PROPERTY_PREFIX = "easelint.targets."
+
+        /**
+         * 登记 token 的系统属性名，hook 后的 LintRequest 运行在 daemon 中不同的 classloader 里，只能通过系统属性确认
+         */
+        fun tokenProperty(token: String): String = TOKEN_PROPERTY_PREFIX + token
+
+        /**
+         * 清单旁记录本次构建 token 的文件，见 TargetManifestService
+         */
+        fun leaseOf(manifest: File): File = File(manifest.parentFile, LEASE_NAME)
+
+        /**
+         * 清单是否由本次构建中执行的 easeLint 写出，判断方式与 LintRequest 一致；
+         * 否则是之前的构建遗留的，应按 lint 默认的全量扫描处理
+         */
+        fun isLeased(manifest: File): Boolean {
+            val lease = leaseOf(manifest)
+            if (!manifest.exists() || !lease.isFile) return false
+            val token = lease.readText().trim()
+            return token.isNotEmpty() && System.getProperty(tokenProperty(token)) != null
+        }
+
+        /**
+         * 是否需要执行 lint：清单不属于本次构建时为全量扫描，属于本次构建时只有存在目标文件才执行
+         */
+        fun hasTargets(manifest: File): Boolean {
+            return !isLeased(manifest) || readFrom(manifest).isNotEmpty()
+        }
+
+        /**
+         * [report] 是否在本次构建登记清单之后写出，之前构建遗留的报告不属于本次扫描
+         */
+        fun isNewerThanLease(report: File, manifest: File): Boolean {
+            return report.lastModified() >= leaseOf(manifest).lastModified()
+        }
+
+        /**
+         * 过滤白名单并去除不存在的文件
+         *
+         * @param candidates 候选文件绝对路径
+         */
+        fun resolve(candidates: Collection<String>, matcher: WhiteListMatcher): TargetResolution {
+            val files = ArrayList<File>()
+            val missingFiles = ArrayList<String>()
+            //先将所有文件路径去重
+            candidates.distinct().forEach { t ->
+                //判断文件白名单与文件后缀白名单
+                if (matcher.matches(t)) return@forEach
+                val file = File(t)
+                if (file.exists()) {
+                    files.add(file)
+                } else {
+                    missingFiles.add(t)
+                    "this file[$t] is not exists".log("TargetResolution")
+                }
+            }
+            return TargetResolution(files, missingFiles)
+        }
+
+        /**
+         * 读取 [writeTo] 写出的文件清单
+         */
+        fun readFrom(input: File): List<String> {
+            if (!input.exists()) return emptyList()
+            return input.readLines().filter { it.isNotEmpty() && !it.startsWith("#") }
+        }
+    }
+}
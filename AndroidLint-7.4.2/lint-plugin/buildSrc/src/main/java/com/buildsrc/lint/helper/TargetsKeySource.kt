@@ -0,0 +1,32 @@
+package com.buildsrc.lint.helper
+
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.ValueSource
+import org.gradle.api.provider.ValueSourceParameters
+
+/**
+ * lintAnalyze 实际使用的扫描范围，作为它的输入参与构建缓存 key。
+ *
+ * 清单是否属于本次构建要到 easeLint 执行后才能确定，不能在配置阶段读取；
+ * ValueSource 在每次构建 lintAnalyze 计算输入时重新获取，开启 configuration cache 时也不会沿用保存缓存时的值。
+ * 清单不属于本次构建时为全量扫描，遗留的 key 不参与缓存 key，固定为 [TargetResolution.FULL_SCAN_KEY]
+ */
+abstract class TargetsKeySource : ValueSource<String, TargetsKeySource.Params> {
+
+    interface Params : ValueSourceParameters {
+        //ResolveEaseLintTargetsTask 写出的清单
+        val targetsFile: RegularFileProperty
+
+        //ResolveEaseLintTargetsTask 写出的扫描范围，见 TargetResolution.writeCacheKey
+        val targetsKeyFile: RegularFileProperty
+    }
+
+    override fun obtain(): String {
+        val keyFile = parameters.targetsKeyFile.get().asFile
+        return if (TargetResolution.isLeased(parameters.targetsFile.get().asFile) && keyFile.isFile) {
+            keyFile.readText()
+        } else {
+            TargetResolution.FULL_SCAN_KEY
+        }
+    }
+}
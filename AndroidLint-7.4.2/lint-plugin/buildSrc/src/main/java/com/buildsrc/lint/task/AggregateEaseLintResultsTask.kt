@@ -0,0 +1,62 @@
+package com.buildsrc.lint.task
+
+import com.buildsrc.lint.helper.LintResultAggregator
+import com.buildsrc.lint.utils.log
+import org.gradle.api.DefaultTask
+import org.gradle.api.artifacts.component.ProjectComponentIdentifier
+import org.gradle.api.artifacts.result.ResolvedArtifactResult
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.SetProperty
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.TaskAction
+import org.gradle.work.DisableCachingByDefault
+
+/**
+ * 注册在根项目上，把所有 module 的扫描结果合并为一份报告，见 [LintResultAggregator]。
+ *
+ * module 通过 [ELEMENTS_CONFIGURATION_NAME] 对外提供 treatEaseLintResult 输出的二进制结果，
+ * 根项目的 [CONFIGURATION_NAME] 依赖各个 module，解析时先构建出各 module 的 treatEaseLintResult，
+ * 两边都不需要配置对方的任务。
+ * module 的结果文件可能在本次构建中没有变化，增量判断由 [LintResultAggregator] 根据文件签名完成，
+ * 所以这里的属性都是 @Internal，任务每次都会执行
+ */
+@DisableCachingByDefault(because = "增量合并由任务自己完成")
+abstract class AggregateEaseLintResultsTask : DefaultTask() {
+    companion object {
+        const val TASK_NAME = "aggregateEaseLintResults"
+
+        //根项目上用于收集 module 结果的 configuration
+        const val CONFIGURATION_NAME = "easeLintAggregate"
+
+        //module 上对外提供结果的 configuration
+        const val ELEMENTS_CONFIGURATION_NAME = "easeLintResultsElements"
+
+        //两边 configuration 的 Usage 属性，只匹配 EaseLint 的结果，不会选中 module 的其他变种
+        const val USAGE = "easelint-results"
+        const val ARTIFACT_TYPE = "easelint-bin"
+    }
+
+    //各 module treatEaseLintResult 输出的二进制结果，组件标识中带有 module path
+    @get:Internal
+    abstract val moduleResults: SetProperty<ResolvedArtifactResult>
+
+    @get:Internal
+    abstract val outputDir: DirectoryProperty
+
+    @get:Internal
+    abstract val concurrency: Property<Int>
+
+    @TaskAction
+    fun action() {
+        val modules = moduleResults.get().mapNotNull { artifact ->
+            val id = artifact.id.componentIdentifier as? ProjectComponentIdentifier
+                ?: return@mapNotNull null
+            //treatEaseLintResult 已经把 xml 报告转换为二进制结果，不再回退到 xml
+            LintResultAggregator.ModuleResult(id.projectPath, artifact.file, null, null)
+        }
+        val result = LintResultAggregator(outputDir.get().asFile, concurrency.get())
+            .aggregate(modules)
+        "modules:${result.modules} rebuilt:${result.rebuilt} total:${result.total}".log(TASK_NAME)
+    }
+}
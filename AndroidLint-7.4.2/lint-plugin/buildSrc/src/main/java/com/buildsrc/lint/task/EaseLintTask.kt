@@ -1,50 +1,74 @@
 package com.buildsrc.lint.task
 
-import com.android.utils.JvmWideVariable
 import com.buildsrc.lint.helper.LintHookHelper
-import com.buildsrc.lint.helper.LintSlot
-import com.google.common.reflect.TypeToken
+import com.buildsrc.lint.helper.TargetManifestService
 import org.gradle.api.DefaultTask
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Classpath
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.TaskAction
-import java.io.File
 
+/**
+ * 在 lintAnalyze 之前加载 lint hook。
+ * 扫描目标由 [ResolveEaseLintTargetsTask] 写入 build/intermediates/easelint 下的清单文件，
+ * hook 后的 LintRequest 直接读取该文件，不再通过 JVM 全局变量传递，因此多个 module 可以并行执行 lint；
+ * 清单只在执行了本任务的构建中有效，本任务没有输出，每次都会执行并登记清单，见 TargetManifestService。
+ * 执行时只使用声明的属性，不访问 project。
+ *
+ * hook 通过 JvmWideVariable 注入 Gradle daemon 中 AGP 的 classloader 缓存，
+ * lint 运行在 AGP 的独立 worker 进程中时不会生效，会变成对整个 module 的全量扫描，所以直接失败。
+ */
 abstract class EaseLintTask : DefaultTask() {
     companion object {
         const val TASK_NAME = "a1EaseLint"
-        private val targetFiles: JvmWideVariable<ArrayList<String>> =
-            JvmWideVariable(LintHookHelper.lintRequestClass,
-                "targetFiles",
-                object : TypeToken<ArrayList<String>>() {}) { ArrayList() }
-    }
 
-    /**
-     * 如果没有获取到文件，那么使用一个僵尸文件进行替代，避免project.subset 没有文件而进行全量扫描
-     */
-    private val zombieFile by lazy {
-        var file = File(project.buildDir, "easeLint.zombie")
-        if (!file.exists()) {
-            val parent = File(project.buildDir.absolutePath)
-            parent.mkdir()
-            file.createNewFile()
-        }
-        file.absolutePath
+        const val PROPERTY_RUN_LINT_IN_PROCESS = "android.experimental.runLintInProcess"
     }
 
+    //AGP 自带的 lint classpath
+    @get:Classpath
+    abstract val lintClasspath: ConfigurableFileCollection
+
+    //easeLint 的 lint-api hook 包
+    @get:Classpath
+    abstract val hookClasspath: ConfigurableFileCollection
+
+    @get:Input
+    abstract val lintVersionKey: Property<String>
+
+    //hook 包的版本，与 lint 版本一起作为 classloader 缓存的 key
+    @get:Input
+    abstract val hookVersion: Property<String>
+
+    //android.experimental.runLintInProcess，为 false 时 AGP 在独立的 worker 进程中运行 lint
+    @get:Internal
+    abstract val lintInProcess: Property<Boolean>
+
+    //ResolveEaseLintTargetsTask 写出的清单
+    @get:Internal
+    abstract val targetsFile: RegularFileProperty
+
+    //登记本次构建的清单，构建结束时失效
+    @get:Internal
+    abstract val manifestService: Property<TargetManifestService>
+
     @TaskAction
     fun action() {
-        targetFiles.executeCallableSynchronously {
-            targetFiles.set(ArrayList<String>().apply {
-                val files = LintSlot.finalTargets(project)
-                if (files.isNullOrEmpty()) {
-                    add(zombieFile)
-                } else {
-                    LintSlot.finalTargets(project).forEach {
-                        add(it.absolutePath)
-                    }
-                }
-
-            })
+        if (!lintInProcess.getOrElse(true)) {
+            throw LintException(
+                "easeLint hook only works when lint runs in the Gradle daemon," +
+                        " remove $PROPERTY_RUN_LINT_IN_PROCESS=false"
+            )
         }
+        LintHookHelper.loadHook(
+            lintVersionKey.get(),
+            hookVersion.get(),
+            lintClasspath.files,
+            hookClasspath.files
+        )
+        manifestService.get().lease(targetsFile.get().asFile)
     }
-
-}
\ No newline at end of file
+}
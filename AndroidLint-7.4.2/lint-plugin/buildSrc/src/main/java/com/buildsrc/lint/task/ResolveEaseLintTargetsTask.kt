@@ -0,0 +1,157 @@
+package com.buildsrc.lint.task
+
+import com.buildsrc.lint.helper.LintResultCache
+import com.buildsrc.lint.helper.TargetResolution
+import com.buildsrc.lint.utils.LineRanges
+import com.buildsrc.lint.utils.ReferenceIndex
+import com.buildsrc.lint.utils.WhiteListMatcher
+import com.buildsrc.lint.utils.log
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import org.gradle.work.DisableCachingByDefault
+import java.io.File
+
+/**
+ * 解析本 module 最终需要扫描的文件，输出为文件清单。
+ *
+ * 所有参数都在配置阶段确定，执行时不访问 project，支持 configuration cache。
+ * 同时输出与机器无关的 [targetsKeyFile]，声明为 lintAnalyze 的输入，见 TargetResolution.writeCacheKey。
+ * 清单中不包含每次构建不同的内容，输入不变时任务 UP-TO-DATE；
+ * 清单是否属于本次构建由 EaseLintTask 登记，见 TargetManifestService。
+ */
+@DisableCachingByDefault(because = "输出的是本机文件绝对路径，不适合在机器之间共享")
+abstract class ResolveEaseLintTargetsTask : DefaultTask() {
+    companion object {
+        const val TASK_NAME = "resolveEaseLintTargets"
+
+        //-PeaseLintNarrowScope=true 按目标文件类型收窄 lint 的扫描范围，需要更大范围的 issue 会被跳过
+        const val PROPERTY_NARROW_SCOPE = "easeLintNarrowScope"
+    }
+
+    //本 module 目录下的 git 差异文件，由 GitDiffService 在整个构建中只计算一次
+    @get:Input
+    abstract val changedFiles: ListProperty<String>
+
+    @get:Input
+    abstract val compareBranch: Property<String>
+
+    @get:Input
+    abstract val compareCommitId: Property<String>
+
+    @get:Input
+    abstract val fileWhiteList: ListProperty<String>
+
+    @get:Input
+    abstract val suffixWhiteList: ListProperty<String>
+
+    //是否把引用了改动类的文件加入扫描
+    @get:Input
+    abstract val expandDependents: Property<Boolean>
+
+    //整个仓库的 git 差异文件，只在 expandDependents 开启时设置
+    @get:Input
+    abstract val allChangedFiles: ListProperty<String>
+
+    //所有 module 上一次扫描生成的引用索引
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.ABSOLUTE)
+    abstract val referenceIndexFiles: ConfigurableFileCollection
+
+    @get:Input
+    abstract val projectDirPath: Property<String>
+
+    //结果缓存的配置指纹，为空时不使用缓存
+    @get:Input
+    abstract val resultFingerprint: Property<String>
+
+    //上一次扫描没有问题的文件，hook 后的 LintRequest 会跳过其中内容没变的文件
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.NONE)
+    abstract val cleanFiles: ConfigurableFileCollection
+
+    @get:Input
+    abstract val rootDirPath: Property<String>
+
+    //是否只报告改动过的行上的问题
+    @get:Input
+    abstract val changedLinesOnly: Property<Boolean>
+
+    //是否按目标文件类型收窄 lint 的扫描范围，见 lint-api 中的 LintRequest
+    @get:Input
+    abstract val narrowScope: Property<Boolean>
+
+    //本 module 差异文件的改动行，值为 LineRanges.toString()，只在 changedLinesOnly 开启时设置
+    @get:Input
+    abstract val changedLines: MapProperty<String, String>
+
+    @get:OutputFile
+    abstract val targetsFile: RegularFileProperty
+
+    //实际交给 lint 分析的文件的相对路径
+    @get:OutputFile
+    abstract val targetsKeyFile: RegularFileProperty
+
+    //改动行清单，treatEaseLintResult 据此过滤问题，未开启时删除
+    @get:OutputFile
+    abstract val changedLinesFile: RegularFileProperty
+
+    @TaskAction
+    fun action() {
+        val matcher = WhiteListMatcher(fileWhiteList.get(), suffixWhiteList.get())
+        val candidates = ArrayList(changedFiles.get())
+        if (expandDependents.get()) {
+            val index = ReferenceIndex.load(referenceIndexFiles.files)
+            val prefix = projectDirPath.get() + File.separator
+            val dependents = index.dependentsOf(allChangedFiles.get())
+                .filter { it.startsWith(prefix) }
+            "index files=${index.size} dependents=${dependents.size}".log(TASK_NAME)
+            candidates.addAll(dependents)
+        }
+        val resolution = TargetResolution.resolve(candidates, matcher)
+        resolution.writeTo(targetsFile.get().asFile, resultFingerprint.get(), narrowScope.get())
+        resolution.writeCacheKey(
+            targetsKeyFile.get().asFile,
+            skipCleanFiles(resolution.files),
+            File(rootDirPath.get()),
+            narrowScope.get()
+        )
+        "$resolution".log(TASK_NAME)
+        writeChangedLines(resolution)
+    }
+
+    /**
+     * 与 LintRequest 中的判断保持一致：内容与扫描配置都没有变化、且上一次没有问题的文件会被跳过
+     */
+    private fun skipCleanFiles(files: List<File>): List<File> {
+        val fingerprint = resultFingerprint.get()
+        val clean = cleanFiles.files.firstOrNull { it.isFile }
+        if (fingerprint.isEmpty() || clean == null) return files
+        val keys = clean.readLines().toHashSet()
+        return files.filter { !keys.contains(LintResultCache.keyOf(fingerprint, it)) }
+    }
+
+    private fun writeChangedLines(resolution: TargetResolution) {
+        val output = changedLinesFile.get().asFile
+        if (!changedLinesOnly.get()) {
+            output.delete()
+            return
+        }
+        val lines = changedLines.get()
+        //只有 git diff 得到的文件才有改动行，手动配置或引用扩展出的文件不按行过滤
+        val targets = resolution.files.mapNotNull { file ->
+            lines[file.absolutePath]?.let { file.absolutePath to LineRanges.parse(it) }
+        }.toMap()
+        LineRanges.writeTo(output, targets)
+        "changed lines files=${targets.size}".log(TASK_NAME)
+    }
+}
@@ -1,8 +1,23 @@
 package com.buildsrc.lint.task
 
+import com.buildsrc.lint.helper.LintResultCache
+import com.buildsrc.lint.helper.TargetResolution
+import com.buildsrc.lint.utils.BaselineStore
+import com.buildsrc.lint.utils.IssueFingerprint
+import com.buildsrc.lint.utils.LineRanges
+import com.buildsrc.lint.utils.LintResultBinary
+import com.buildsrc.lint.utils.LintResultParser
+import com.buildsrc.lint.utils.LintResultRecord
+import com.buildsrc.lint.utils.LintResultSummary
+import com.buildsrc.lint.utils.SarifResultWriter
 import com.buildsrc.lint.utils.log
 import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.TaskAction
+import java.io.File
 
 
 /**
@@ -10,16 +25,241 @@ import org.gradle.api.tasks.TaskAction
  * 比如：
  * 1.上传 lint 报告 或发送邮件
  * 2.解析 lint 报告，通知企业 IM
+ * 3.记录本次没有问题的文件，下次内容不变时跳过扫描
+ * 4.把 xml 报告转换为 SARIF 与紧凑的二进制格式，CI 不需要再解析 xml
+ * 5.按 issue/severity/module 统计问题数量，挑出 baseline 中没有的新问题，
+ *   存在 EaseLint baseline 时新增的 Error/Fatal 问题会让构建失败
+ * 6.开启 changedLinesOnly 时只保留改动过的行上的问题
  * <Task 类必须都是 open>
  */
-open class TreatEaseLintResultTask : DefaultTask() {
+abstract class TreatEaseLintResultTask : DefaultTask() {
     companion object {
         const val TASK_NAME = "treatEaseLintResult"
     }
 
+    //本次扫描的目标文件清单
+    @get:Internal
+    abstract val targetsFile: RegularFileProperty
+
+    //改动行清单，不存在时不按行过滤，见 LineRanges
+    @get:Internal
+    abstract val changedLinesFile: RegularFileProperty
+
+    //lintReport 输出的 xml 报告
+    @get:Internal
+    abstract val xmlReportFile: RegularFileProperty
+
+    //lintReport 没有输出 xml 时改为读取 lintAnalyze 的 partial results
+    @get:Internal
+    abstract val partialResultsDir: DirectoryProperty
+
+    //lint baseline，不存在时所有问题都视为新问题
+    @get:Internal
+    abstract val baselineFile: RegularFileProperty
+
+    //EaseLint baseline，按稳定指纹匹配，优先于 lint baseline，见 BaselineStore
+    @get:Internal
+    abstract val easeLintBaselineFile: RegularFileProperty
+
+    //用本次扫描结果重新生成 EaseLint baseline
+    @get:Internal
+    abstract val updateBaseline: Property<Boolean>
+
+    //计算指纹时文件路径相对于根目录
+    @get:Internal
+    abstract val rootDir: DirectoryProperty
+
+    @get:Internal
+    abstract val modulePath: Property<String>
+
+    @get:Internal
+    abstract val cleanFilesFile: RegularFileProperty
+
+    @get:Internal
+    abstract val sarifFile: RegularFileProperty
+
+    //格式见 LintResultBinary
+    @get:Internal
+    abstract val binaryFile: RegularFileProperty
+
+    @get:Internal
+    abstract val lintVersion: Property<String>
+
+    //为空时不记录缓存
+    @get:Internal
+    abstract val resultFingerprint: Property<String>
+
+    @get:Internal
+    abstract val projectDir: DirectoryProperty
+
+    //本次是否使用 EaseLint baseline 判断新问题
+    private var matchEaseLintBaseline = false
+
     @TaskAction
     fun action() {
         "TreatEaseLintResultTask:action".log("lifeTrack____1")
+        val xml = xmlReportFile.get().asFile
+        val targets = targetsFile.get().asFile
+        if (!TargetResolution.hasTargets(targets)) {
+            //作为 lintReport 的 finalizer，lintReport 因为没有目标文件被跳过时同样会执行，此时没有本次的报告
+            clearResults()
+        } else if (xml.isFile && TargetResolution.isLeased(targets) && !TargetResolution.isNewerThanLease(xml, targets)) {
+            //lintReport 没有在本次构建输出报告，不转换之前构建遗留的报告；
+            //只统计本次 lintAnalyze 输出的 partial results 中的问题数量，不检查也不更新 baseline
+            "skip stale report: ${xml.absolutePath}".log(TASK_NAME)
+            clearResults()
+            summarizePartialResults()
+        } else if (xml.isFile) {
+            val reported = convertReport(xml)
+            recordCleanFiles(reported)
+        } else {
+            clearResults()
+            summarizePartialResults()
+        }
+    }
+
+    /**
+     * 本次构建没有可以转换的 xml 报告，删除之前构建遗留的 SARIF 与二进制结果，
+     * 避免被 aggregateEaseLintResults 当作本次的结果合并
+     */
+    private fun clearResults() {
+        listOf(sarifFile.get().asFile, binaryFile.get().asFile).filter { it.isFile }.forEach {
+            it.delete()
+            "remove stale result: ${it.absolutePath}".log(TASK_NAME)
+        }
+    }
+
+    /**
+     * 遍历一次 xml 报告，同时写出 SARIF 与二进制结果并统计问题，返回报告中出现过的所有文件
+     */
+    private fun convertReport(xml: File): Set<String> {
+        val files = HashSet<String>()
+        val fingerprint = IssueFingerprint(rootDir.get().asFile)
+        val summary = createSummary(fingerprint)
+        val builder = if (updateBaseline.getOrElse(false)) BaselineStore.Builder() else null
+        val module = modulePath.getOrElse("")
+        val sarif = sarifFile.get().asFile
+        val binary = binaryFile.get().asFile
+        sarif.parentFile?.mkdirs()
+        binary.parentFile?.mkdirs()
+        val changedLines = loadChangedLines()
+        SarifResultWriter(sarif.bufferedWriter(), lintVersion.getOrElse(""), rootDir.get().asFile).use { sarifWriter ->
+            LintResultBinary.Writer(binary.outputStream()).use { binaryWriter ->
+                LintResultParser.parse(xml, projectDir.get().asFile) { record ->
+                    //未改动的行上的问题同样说明文件不是干净的
+                    if (record.file.isNotEmpty()) files.add(record.file)
+                    //baseline 记录整个文件的问题，不按改动行过滤
+                    builder?.add(fingerprint.of(record), record, fingerprint.relativePath(record.file))
+                    if (!isChanged(changedLines, record)) return@parse
+                    sarifWriter.write(record)
+                    binaryWriter.write(record)
+                    summary.add(module, record)
+                }
+            }
+        }
+        finish(summary, builder, fingerprint)
+        return files
+    }
+
+    /**
+     * partial results 中的路径带有 ${...} 占位符（见 LintResultParser.resolve），
+     * 算出的指纹与相对路径不能和 baseline、改动行清单对应，
+     * 所以这里只统计数量：不按 baseline 判断新问题、不按改动行过滤，也不更新 baseline
+     */
+    private fun summarizePartialResults() {
+        val dir = partialResultsDir.orNull?.asFile ?: return
+        if (!dir.isDirectory) return
+        if (updateBaseline.getOrElse(false)) {
+            "no xml report of this build, baseline is not updated".log(TASK_NAME)
+        }
+        val summary = LintResultSummary()
+        val module = modulePath.getOrElse("")
+        LintResultParser.parseDirectory(dir, projectDir.get().asFile) { record ->
+            summary.add(module, record)
+        }
+        "partial results, counts only: total:${summary.total} severity:${summary.bySeverity} issue:${summary.byIssue}"
+            .log(TASK_NAME)
+    }
+
+    /**
+     * 更新 baseline 时写出新的 baseline，否则检查是否有新增的 Error/Fatal 问题
+     */
+    private fun finish(
+        summary: LintResultSummary,
+        builder: BaselineStore.Builder?,
+        fingerprint: IssueFingerprint
+    ) {
+        summary.toString().log(TASK_NAME)
+        if (builder == null) {
+            checkNewErrors(summary)
+            return
+        }
+        val baseline = easeLintBaselineFile.get().asFile
+        //只扫描了部分文件时保留其他文件在旧 baseline 中的记录，清单不属于本次构建表示扫描了整个 module
+        val targets = targetsFile.get().asFile
+        if (TargetResolution.isLeased(targets)) {
+            val scanned = TargetResolution.readFrom(targets).map { fingerprint.relativePath(it) }
+            builder.retain(baseline, scanned.toSet())
+        }
+        builder.writeTo(baseline)
+        "baseline updated: ${baseline.absolutePath}".log(TASK_NAME)
+    }
+
+    private fun loadChangedLines(): Map<String, LineRanges> {
+        val file = changedLinesFile.orNull?.asFile ?: return emptyMap()
+        if (!TargetResolution.isLeased(targetsFile.get().asFile)) return emptyMap()
+        val lines = LineRanges.readFrom(file)
+        if (lines.isNotEmpty()) "changed lines files=${lines.size}".log(TASK_NAME)
+        return lines
+    }
+
+    /**
+     * 清单中没有的文件与没有行号的问题都保留
+     */
+    private fun isChanged(changedLines: Map<String, LineRanges>, record: LintResultRecord): Boolean {
+        if (record.line <= 0) return true
+        val ranges = changedLines[record.file] ?: return true
+        return ranges.contains(record.line)
+    }
+
+    /**
+     * 存在 EaseLint baseline 时按指纹匹配，否则退化为按 lint baseline 匹配
+     */
+    private fun createSummary(fingerprint: IssueFingerprint): LintResultSummary {
+        val easeLintBaseline = easeLintBaselineFile.orNull?.asFile
+        if (easeLintBaseline != null && easeLintBaseline.isFile && !updateBaseline.getOrElse(false)) {
+            val matcher = BaselineStore.load(easeLintBaseline).matcher()
+            matchEaseLintBaseline = true
+            return LintResultSummary { matcher.isKnown(fingerprint.of(it)) }
+        }
+        val baseline = baselineFile.orNull?.asFile
+        val keys = if (baseline != null && baseline.isFile) {
+            LintResultSummary.loadKnownKeys(baseline)
+        } else {
+            emptySet()
+        }
+        return LintResultSummary { keys.contains(LintResultSummary.keyOf(it)) }
+    }
+
+    private fun checkNewErrors(summary: LintResultSummary) {
+        if (!matchEaseLintBaseline || summary.newErrorCount == 0) return
+        val details = summary.newIssues
+            .filter { it.severity == "Error" || it.severity == "Fatal" }
+            .take(20)
+            .joinToString("\n") { "${it.id}: ${it.file}:${it.line} ${it.message}" }
+        throw LintException("${summary.newErrorCount} new lint errors compared with baseline:\n$details")
+    }
+
+    private fun recordCleanFiles(reported: Set<String>) {
+        val fingerprint = resultFingerprint.getOrElse("")
+        val targets = targetsFile.get().asFile
+        if (fingerprint.isEmpty() || !TargetResolution.isLeased(targets)) return
+        val keys = TargetResolution.readFrom(targets)
+            .map { File(it) }
+            .filter { !reported.contains(it.absolutePath) }
+            .mapNotNull { LintResultCache.keyOf(fingerprint, it) }
+        LintResultCache.record(cleanFilesFile.get().asFile, keys)
+        "clean files:${keys.size}".log(TASK_NAME)
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package com.buildsrc.lint.utils
+
+import java.io.File
+import java.security.MessageDigest
+
+/**
+ * 计算问题的稳定指纹：issue id + 文件相对路径 + 所在声明的签名 + 归一化后代码行的 hash。
+ *
+ * 不包含行号，代码上下移动、缩进调整后指纹不变；所在声明取从外到内的所有类与方法名，
+ * 比如 MainActivity.onCreate，同一文件中相同的代码行出现在不同方法里时仍能区分。
+ * 源码按文件缓存最近 [MAX_CACHED_FILES] 个，报告按 issue 排序时同一文件会被反复访问
+ */
+class IssueFingerprint(private val rootDir: File) {
+    private val sources = object : LinkedHashMap<String, List<String>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, List<String>>?): Boolean {
+            return size > MAX_CACHED_FILES
+        }
+    }
+
+    fun of(record: LintResultRecord): String {
+        val lines = linesOf(record.file)
+        val index = record.line - 1
+        val snippet = if (lines != null && index in lines.indices) {
+            normalize(lines[index])
+        } else {
+            //没有源码或行号时退化为 message，去掉其中的数字
+            record.message.replace(DIGITS, "#")
+        }
+        val enclosing = if (lines != null && index in lines.indices) enclosingOf(lines, index) else ""
+        return sha256(record.id, relativePath(record.file), enclosing, sha256(snippet))
+    }
+
+    private fun linesOf(path: String): List<String>? {
+        if (path.isEmpty()) return null
+        sources[path]?.let { return it }
+        val file = File(path)
+        if (!file.isFile) return null
+        val lines = file.readLines()
+        sources[path] = lines
+        return lines
+    }
+
+    /**
+     * 相对根目录的路径，不在根目录下时只取文件名
+     */
+    fun relativePath(path: String): String {
+        if (path.isEmpty()) return ""
+        val file = File(path)
+        val root = rootDir.absolutePath + File.separator
+        return if (file.absolutePath.startsWith(root)) {
+            file.absolutePath.substring(root.length).replace('\\', '/')
+        } else {
+            file.name
+        }
+    }
+
+    /**
+     * 从问题所在行向上查找，只接受花括号层级上包含该行的声明，跳过已经闭合的兄弟方法
+     */
+    private fun enclosingOf(lines: List<String>, index: Int): String {
+        val names = ArrayList<String>()
+        declarationOf(lines[index])?.let { names.add(it) }
+        //向上扫描时遇到的、尚未匹配的 '}' 数量
+        var pending = 0
+        for (i in index - 1 downTo 0) {
+            val line = stripLiterals(lines[i])
+            var opensEnclosing = false
+            for (j in line.length - 1 downTo 0) {
+                when (line[j]) {
+                    '}' -> pending++
+                    '{' -> if (pending > 0) pending-- else opensEnclosing = true
+                }
+            }
+            if (!opensEnclosing) continue
+            //'{' 单独成行时声明在上一行
+            val declaration = declarationOf(lines[i])
+                ?: if (i > 0) declarationOf(lines[i - 1]) else null
+            if (declaration != null) names.add(declaration)
+        }
+        return names.asReversed().joinToString(".")
+    }
+
+    private fun declarationOf(line: String): String? {
+        val code = stripLiterals(line)
+        TYPE_OR_FUN.find(code)?.let { return it.groupValues[2] }
+        val method = JAVA_METHOD.find(code) ?: return null
+        val name = method.groupValues[1]
+        return if (KEYWORDS.contains(name)) null else name
+    }
+
+    private fun stripLiterals(line: String): String {
+        return line.replace(STRING_LITERAL, "\"\"").substringBefore("//")
+    }
+
+    private fun normalize(line: String): String = line.replace(WHITESPACE, "")
+
+    private fun sha256(vararg parts: String): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        parts.forEach {
+            digest.update(it.toByteArray(Charsets.UTF_8))
+            digest.update(0.toByte())
+        }
+        val builder = StringBuilder()
+        //64 位足够区分 baseline 中的问题
+        digest.digest().take(8).forEach { builder.append(String.format("%02x", it)) }
+        return builder.toString()
+    }
+
+    companion object {
+        private const val MAX_CACHED_FILES = 64
+        private val DIGITS = Regex("\\d+")
+        private val WHITESPACE = Regex("\\s+")
+        private val STRING_LITERAL = Regex("\"(?:\\\\.|[^\"\\\\])*\"")
+        private val TYPE_OR_FUN =
+            Regex("\\b(class|interface|object|enum|fun)\\s+(?:<[^>]*>\\s*)?(?:[\\w.]+\\.)?([A-Za-z_]\\w*)")
+        private val JAVA_METHOD = Regex("^\\s*(?:[\\w<>\\[\\],.?@]+\\s+)+([A-Za-z_]\\w*)\\s*\\(")
+        private val KEYWORDS = setOf(
+            "if", "for", "while", "switch", "catch", "return", "new", "throw", "synchronized", "when"
+        )
+    }
+}
@@ -0,0 +1,151 @@
+package com.buildsrc.lint.utils
+
+import java.io.*
+
+/**
+ * 报告中的一条问题，行列从 1 开始，0 表示未知
+ */
+class LintResultRecord(
+    val id: String,
+    val severity: String,
+    val category: String,
+    val priority: Int,
+    val message: String,
+    val file: String,
+    val line: Int,
+    val column: Int
+)
+
+/**
+ * 紧凑的二进制结果文件，CI 读取时不需要再解析几百 MB 的 xml：
+ *
+ * 文件头为 "ELRB" + 版本号 1 个字节；每条记录为 varint 长度 + 内容，
+ * 内容依次为 id、severity、category、priority、message、file、line、column，
+ * 字符串为 varint 字节数 + utf8，数字为 varint；
+ * 以长度 0 结束，随后写入记录总数用于校验文件是否完整。
+ * 4.1.0 中 lint-gradle 的 BinaryStreamingReportWriter 写出相同的格式
+ */
+object LintResultBinary {
+    private val MAGIC = "ELRB".toByteArray(Charsets.US_ASCII)
+    private const val VERSION = 1
+
+    class Writer(output: OutputStream) : Closeable {
+        private val output = BufferedOutputStream(output)
+        private val buffer = ByteArrayOutputStream(256)
+        var count = 0
+            private set
+
+        //已写出的字节数，下一条记录在文件中的偏移
+        var position = 0L
+            private set
+
+        init {
+            this.output.write(MAGIC)
+            this.output.write(VERSION)
+            position = MAGIC.size + 1L
+        }
+
+        fun write(record: LintResultRecord) {
+            buffer.reset()
+            buffer.writeString(record.id)
+            buffer.writeString(record.severity)
+            buffer.writeString(record.category)
+            buffer.writeVarInt(record.priority.coerceAtLeast(0))
+            buffer.writeString(record.message)
+            buffer.writeString(record.file)
+            buffer.writeVarInt(record.line.coerceAtLeast(0))
+            buffer.writeVarInt(record.column.coerceAtLeast(0))
+            output.writeVarInt(buffer.size())
+            buffer.writeTo(output)
+            position += varIntSize(buffer.size()) + buffer.size()
+            count++
+        }
+
+        override fun close() {
+            output.writeVarInt(0)
+            output.writeVarInt(count)
+            output.close()
+        }
+    }
+
+    /**
+     * 逐条读取 [file] 中的记录，返回记录总数；文件不完整或格式不对时抛出 [IOException]
+     */
+    fun read(file: File, action: (LintResultRecord) -> Unit): Int {
+        DataInputStream(BufferedInputStream(FileInputStream(file))).use { input ->
+            val magic = ByteArray(MAGIC.size)
+            input.readFully(magic)
+            if (!magic.contentEquals(MAGIC)) throw IOException("not a lint result file: $file")
+            val version = input.readUnsignedByte()
+            if (version != VERSION) throw IOException("unsupported version $version: $file")
+            var count = 0
+            while (true) {
+                val length = input.readVarInt()
+                if (length == 0) break
+                val payload = ByteArray(length)
+                input.readFully(payload)
+                action(decode(DataInputStream(ByteArrayInputStream(payload))))
+                count++
+            }
+            val expected = input.readVarInt()
+            if (expected != count) throw IOException("truncated lint result file: $file")
+            return count
+        }
+    }
+
+    private fun decode(input: DataInputStream): LintResultRecord {
+        return LintResultRecord(
+            id = input.readString(),
+            severity = input.readString(),
+            category = input.readString(),
+            priority = input.readVarInt(),
+            message = input.readString(),
+            file = input.readString(),
+            line = input.readVarInt(),
+            column = input.readVarInt()
+        )
+    }
+
+    private fun varIntSize(value: Int): Int {
+        var size = 1
+        var v = value ushr 7
+        while (v != 0) {
+            size++
+            v = v ushr 7
+        }
+        return size
+    }
+
+    private fun OutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeVarInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun OutputStream.writeVarInt(value: Int) {
+        var v = value
+        while (v and 0x7F.inv() != 0) {
+            write((v and 0x7F) or 0x80)
+            v = v ushr 7
+        }
+        write(v)
+    }
+
+    private fun DataInputStream.readString(): String {
+        val bytes = ByteArray(readVarInt())
+        readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun DataInputStream.readVarInt(): Int {
+        var result = 0
+        var shift = 0
+        while (shift < 32) {
+            val b = readUnsignedByte()
+            result = result or ((b and 0x7F) shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw IOException("malformed varint")
+    }
+}
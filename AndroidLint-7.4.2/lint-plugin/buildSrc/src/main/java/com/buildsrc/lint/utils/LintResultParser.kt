@@ -0,0 +1,118 @@
+package com.buildsrc.lint.utils
+
+import java.io.BufferedInputStream
+import java.io.File
+import java.io.FileInputStream
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
+
+/**
+ * 基于 StAX 逐条解析 lint 的结果 xml，不把整个文档读入内存。
+ * 同时支持 lint-results.xml（<issue>）与 lint 分析阶段输出的 partial results（<incident>），
+ * 一条问题只取第一个 <location>
+ */
+object LintResultParser {
+    private val factory: XMLInputFactory = XMLInputFactory.newInstance().apply {
+        setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false)
+        setProperty(XMLInputFactory.IS_COALESCING, false)
+    }
+
+    /**
+     * 解析 [xml]，相对路径按 [baseDir] 解析为绝对路径，返回问题数量
+     */
+    fun parse(xml: File, baseDir: File?, action: (LintResultRecord) -> Unit): Int {
+        if (!xml.isFile) return 0
+        BufferedInputStream(FileInputStream(xml)).use { input ->
+            val reader = factory.createXMLStreamReader(input)
+            try {
+                return parse(reader, baseDir, action)
+            } finally {
+                reader.close()
+            }
+        }
+    }
+
+    /**
+     * 解析目录下所有的 xml，用于 lint partial results 目录
+     */
+    fun parseDirectory(dir: File, baseDir: File?, action: (LintResultRecord) -> Unit): Int {
+        val files = dir.listFiles { file -> file.isFile && file.name.endsWith(".xml") }
+            ?: return 0
+        return files.sortedBy { it.name }.sumOf { parse(it, baseDir, action) }
+    }
+
+    private fun parse(
+        reader: XMLStreamReader,
+        baseDir: File?,
+        action: (LintResultRecord) -> Unit
+    ): Int {
+        var count = 0
+        var issue: Map<String, String>? = null
+        var location: Map<String, String>? = null
+        while (reader.hasNext()) {
+            when (reader.next()) {
+                XMLStreamConstants.START_ELEMENT -> when (reader.localName) {
+                    "issue", "incident" -> {
+                        issue = reader.attributes()
+                        location = null
+                    }
+                    "location" -> if (issue != null && location == null) {
+                        location = reader.attributes()
+                    }
+                }
+                XMLStreamConstants.END_ELEMENT -> when (reader.localName) {
+                    "issue", "incident" -> {
+                        val current = issue
+                        if (current != null) {
+                            action(toRecord(current, location, baseDir))
+                            count++
+                        }
+                        issue = null
+                        location = null
+                    }
+                }
+            }
+        }
+        return count
+    }
+
+    private fun XMLStreamReader.attributes(): Map<String, String> {
+        val map = HashMap<String, String>(attributeCount * 2)
+        for (i in 0 until attributeCount) {
+            map[getAttributeLocalName(i)] = getAttributeValue(i)
+        }
+        return map
+    }
+
+    private fun toRecord(
+        issue: Map<String, String>,
+        location: Map<String, String>?,
+        baseDir: File?
+    ): LintResultRecord {
+        return LintResultRecord(
+            id = issue["id"].orEmpty(),
+            severity = issue["severity"].orEmpty(),
+            category = issue["category"].orEmpty(),
+            priority = issue["priority"]?.toIntOrNull() ?: 0,
+            message = issue["message"].orEmpty(),
+            file = resolve(location?.get("file").orEmpty(), baseDir),
+            line = location?.get("line")?.toIntOrNull() ?: 0,
+            column = location?.get("column")?.toIntOrNull() ?: 0
+        )
+    }
+
+    /**
+     * partial results 中的路径带有 ${...} 占位符，无法还原，保持原样
+     */
+    private fun resolve(path: String, baseDir: File?): String {
+        if (path.isEmpty() || path.startsWith("\${")) return path
+        val file = File(path)
+        return when {
+            file.isAbsolute -> file.absolutePath
+            baseDir != null -> File(baseDir, path).absolutePath
+            else -> path
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.buildsrc.lint.utils
+
+import java.io.File
+import java.util.ArrayDeque
+
+/**
+ * 按路径分段（目录层级）构建的前缀树，用于快速取出某个目录下的全部文件。
+ * 查询耗时只与目录深度和命中的文件数相关，与树中的文件总数无关。
+ */
+class PathTrie {
+    private class Node {
+        val children = HashMap<String, Node>()
+
+        //非空表示此节点对应一个完整的文件路径
+        var path: String? = null
+    }
+
+    private val root = Node()
+
+    var size = 0
+        private set
+
+    fun add(path: String) {
+        var node = root
+        segments(path).forEach { segment ->
+            node = node.children.getOrPut(segment) { Node() }
+        }
+        if (node.path == null) size++
+        node.path = path
+    }
+
+    fun addAll(paths: Iterable<String>) {
+        paths.forEach { add(it) }
+    }
+
+    /**
+     * @param dir 目录绝对路径
+     * @return [dir] 目录下（含子目录）的所有文件路径
+     */
+    fun filesUnder(dir: File): List<String> {
+        var node = root
+        for (segment in segments(dir.absolutePath)) {
+            node = node.children[segment] ?: return emptyList()
+        }
+        val result = ArrayList<String>()
+        val stack = ArrayDeque<Node>()
+        stack.push(node)
+        while (stack.isNotEmpty()) {
+            val current = stack.pop()
+            current.path?.let { result.add(it) }
+            current.children.values.forEach { stack.push(it) }
+        }
+        return result
+    }
+
+    private fun segments(path: String): List<String> {
+        return path.split('/', '\\').filter { it.isNotEmpty() }
+    }
+}
@@ -0,0 +1,129 @@
+package com.buildsrc.lint.utils
+
+import java.io.Closeable
+import java.io.File
+import java.io.Writer
+
+/**
+ * 逐条写出 SARIF 2.1.0，results 在前，规则列表在写入过程中收集，关闭时写在 tool 节点里；
+ * 文件位置相对 [srcRoot] 输出，见 [artifactLocationOf]
+ */
+class SarifResultWriter(
+    private val writer: Writer,
+    private val toolVersion: String,
+    private val srcRoot: File?
+) : Closeable {
+    companion object {
+        private const val SRC_ROOT = "%SRCROOT%"
+    }
+
+    //id -> category
+    private val rules = LinkedHashMap<String, String>()
+    private var first = true
+
+    init {
+        writer.write(
+            "{\n  \"\$schema\": \"https://json.schemastore.org/sarif-2.1.0.json\",\n" +
+                    "  \"version\": \"2.1.0\",\n  \"runs\": [\n    {\n      \"results\": ["
+        )
+    }
+
+    fun write(record: LintResultRecord) {
+        rules.getOrPut(record.id) { record.category }
+        writer.write(if (first) "\n" else ",\n")
+        first = false
+        writer.write("        {\"ruleId\": ")
+        writer.write(record.id.toJson())
+        writer.write(", \"level\": ")
+        writer.write(levelOf(record.severity).toJson())
+        writer.write(", \"message\": {\"text\": ")
+        writer.write(record.message.toJson())
+        writer.write("}, \"locations\": [{\"physicalLocation\": {\"artifactLocation\": ")
+        writer.write(artifactLocationOf(record.file))
+        if (record.line > 0) {
+            writer.write(", \"region\": {\"startLine\": ${record.line}")
+            if (record.column > 0) writer.write(", \"startColumn\": ${record.column}")
+            writer.write("}")
+        }
+        writer.write("}}]}")
+    }
+
+    override fun close() {
+        writer.write("\n      ],\n      ")
+        writeOriginalUriBaseIds()
+        writer.write("\"tool\": {\"driver\": {\"name\": \"EaseLint\", ")
+        writer.write("\"version\": ${toolVersion.toJson()}, \"rules\": [")
+        var firstRule = true
+        rules.forEach { (id, category) ->
+            writer.write(if (firstRule) "\n" else ",\n")
+            firstRule = false
+            writer.write(
+                "        {\"id\": ${id.toJson()}, " +
+                        "\"properties\": {\"category\": ${category.toJson()}}}"
+            )
+        }
+        writer.write("\n      ]}}\n    }\n  ]\n}\n")
+        writer.close()
+    }
+
+    /**
+     * [srcRoot] 下的文件写为相对 %SRCROOT% 的 URI，其他文件写为绝对的 file URI，
+     * 都经过百分号编码：Windows 盘符不会被解析为 scheme，空格与 # 也不会截断路径
+     */
+    private fun artifactLocationOf(path: String): String {
+        if (path.isEmpty()) return "{\"uri\": \"\"}"
+        val file = File(path).absoluteFile
+        val relative = srcRoot?.let { file.relativeToOrNull(it)?.invariantSeparatorsPath }
+        if (relative != null && relative.isNotEmpty() && relative != ".." && !relative.startsWith("../")) {
+            return "{\"uri\": ${relative.split('/').joinToString("/") { it.encodeSegment() }.toJson()}, " +
+                    "\"uriBaseId\": \"$SRC_ROOT\"}"
+        }
+        return "{\"uri\": ${file.toURI().toASCIIString().toJson()}}"
+    }
+
+    private fun writeOriginalUriBaseIds() {
+        val root = srcRoot ?: return
+        val uri = root.absoluteFile.toURI().toASCIIString().let { if (it.endsWith("/")) it else "$it/" }
+        writer.write("\"originalUriBaseIds\": {\"$SRC_ROOT\": {\"uri\": ${uri.toJson()}}}, ")
+    }
+
+    //只保留 RFC 3986 的 unreserved 字符，其余按 utf8 字节编码
+    private fun String.encodeSegment(): String {
+        val builder = StringBuilder(length)
+        toByteArray(Charsets.UTF_8).forEach {
+            val c = (it.toInt() and 0xff).toChar()
+            if (c in 'a'..'z' || c in 'A'..'Z' || c in '0'..'9' || c in "-._~") {
+                builder.append(c)
+            } else {
+                builder.append('%').append(String.format("%02X", it.toInt() and 0xff))
+            }
+        }
+        return builder.toString()
+    }
+
+    private fun levelOf(severity: String): String {
+        return when (severity) {
+            "Fatal", "Error" -> "error"
+            "Warning" -> "warning"
+            else -> "note"
+        }
+    }
+
+    private fun String.toJson(): String {
+        val builder = StringBuilder(length + 2)
+        builder.append('"')
+        forEach {
+            when {
+                it == '"' -> builder.append("\\\"")
+                it == '\\' -> builder.append("\\\\")
+                it == '\n' -> builder.append("\\n")
+                it == '\r' -> builder.append("\\r")
+                it == '\t' -> builder.append("\\t")
+                it < ' ' -> builder.append(String.format("\\u%04x", it.code))
+                else -> builder.append(it)
+            }
+        }
+        builder.append('"')
+        return builder.toString()
+    }
+}
@@ -0,0 +1,101 @@
+package com.buildsrc.lint.utils
+
+import java.nio.file.FileSystems
+import java.nio.file.PathMatcher
+import java.nio.file.Paths
+
+/**
+ * 白名单匹配器，在白名单变化时编译一次，之后每个文件的匹配耗时与白名单条数无关。
+ *
+ * 1.文件白名单按目录层级建前缀树，只在完整的目录/文件名边界上匹配，
+ *   避免 com/foo 误伤 com/foobar 这种路径中段的意外命中
+ * 2.后缀白名单倒序建字符树，从路径末尾往前走一遍即可判断
+ * 3.包含 * ? [ { 的文件白名单按 glob 处理，语法与 [java.nio.file.FileSystem.getPathMatcher] 一致
+ *
+ * @param fileWhiteList 文件或目录白名单
+ * @param suffixWhiteList 文件后缀白名单
+ */
+class WhiteListMatcher(fileWhiteList: Collection<String>, suffixWhiteList: Collection<String>) {
+
+    private class SegmentNode {
+        val children = HashMap<String, SegmentNode>()
+        var terminal = false
+    }
+
+    private class CharNode {
+        val children = HashMap<Char, CharNode>()
+        var terminal = false
+    }
+
+    private val segmentRoot = SegmentNode()
+    private val suffixRoot = CharNode()
+    private val globs = ArrayList<PathMatcher>()
+
+    init {
+        fileWhiteList.forEach { entry ->
+            if (isGlob(entry)) {
+                globs.add(FileSystems.getDefault().getPathMatcher("glob:$entry"))
+            } else {
+                val segments = segments(entry)
+                if (segments.isEmpty()) return@forEach
+                var node = segmentRoot
+                segments.forEach { node = node.children.getOrPut(it) { SegmentNode() } }
+                node.terminal = true
+            }
+        }
+        suffixWhiteList.forEach { suffix ->
+            if (suffix.isEmpty()) return@forEach
+            var node = suffixRoot
+            for (i in suffix.length - 1 downTo 0) {
+                node = node.children.getOrPut(suffix[i]) { CharNode() }
+            }
+            node.terminal = true
+        }
+    }
+
+    /**
+     * @return true 表示 [path] 命中白名单，不需要扫描
+     */
+    fun matches(path: String): Boolean {
+        return matchesSuffix(path) || matchesFile(path) || matchesGlob(path)
+    }
+
+    private fun matchesSuffix(path: String): Boolean {
+        var node = suffixRoot
+        for (i in path.length - 1 downTo 0) {
+            node = node.children[path[i]] ?: return false
+            if (node.terminal) return true
+        }
+        return false
+    }
+
+    private fun matchesFile(path: String): Boolean {
+        if (segmentRoot.children.isEmpty()) return false
+        val segments = segments(path)
+        for (start in segments.indices) {
+            var node = segmentRoot.children[segments[start]] ?: continue
+            if (node.terminal) return true
+            for (i in start + 1 until segments.size) {
+                node = node.children[segments[i]] ?: break
+                if (node.terminal) return true
+            }
+        }
+        return false
+    }
+
+    private fun matchesGlob(path: String): Boolean {
+        if (globs.isEmpty()) return false
+        val p = Paths.get(path)
+        return globs.any { it.matches(p) }
+    }
+
+    private fun segments(path: String): List<String> {
+        return path.split('/', '\\').filter { it.isNotEmpty() }
+    }
+
+    companion object {
+        private val GLOB_CHARS = charArrayOf('*', '?', '[', '{')
+
+        fun isGlob(entry: String): Boolean = entry.any { it in GLOB_CHARS }
+    }
+}
@@ -16,13 +16,14 @@ package com.android.tools.lint.client.api
  * limitations under the License.
  */
 
+import com.android.SdkConstants
+import com.android.resources.ResourceFolderType
 import com.android.tools.lint.detector.api.Platform
 import com.android.tools.lint.detector.api.Project
 import com.android.tools.lint.detector.api.Scope
-import com.android.utils.JvmWideVariable
-import com.google.common.reflect.TypeToken
 import java.io.File
 import java.io.IOException
+import java.security.MessageDigest
 import java.util.*
 
 /** Information about a request to run lint. */
@@ -143,10 +144,19 @@ open class LintRequest(
 
     fun setProjects(projects: Collection<Project>?): LintRequest {
         println("========= easeLint cover LintRequest =========")
-        projects?.first()?.let {
-            val unExistFiles = mutableListOf<String>()
-            targetFiles.executeCallableSynchronously {
-                targetFiles.get().forEach { path ->
+        projects?.firstOrNull()?.let {
+            val manifest = targetManifest(it)
+            if (manifest.exists() && !isLeased(manifest)) {
+                // 上一次 easeLint 遗留的清单，不属于本次构建，按 lint 默认方式全量扫描
+                println("======== easeLint ignore stale target manifest:$manifest")
+            } else if (manifest.exists()) {
+                val unExistFiles = mutableListOf<String>()
+                val targets = skipCleanFiles(it, manifest, readTargetManifest(manifest))
+                if (targets.isEmpty()) {
+                    // 没有目标文件时使用僵尸文件占位，避免 project.subset 为空而进行全量扫描
+                    it.addFile(zombieFile(it))
+                }
+                targets.forEach { path ->
                     val file = File(path)
                     if (file.exists()) {
                         it.addFile(file)
@@ -154,23 +164,163 @@ open class LintRequest(
                         unExistFiles.add(path)
                     }
                 }
-            }
-            if (unExistFiles.isNotEmpty()) {
-                println("======== easeLint Can not found files:$unExistFiles")
-                throw IOException("LintRequest:Can not found files:$unExistFiles")
+                if (unExistFiles.isNotEmpty()) {
+                    println("======== easeLint Can not found files:$unExistFiles")
+                    throw IOException("LintRequest:Can not found files:$unExistFiles")
+                }
+                // 开启 easeLintNarrowScope 时，只有 kt、java 文件时跳过资源、manifest、class 文件等阶段
+                if (scope == null && isNarrowScope(manifest)) {
+                    inferScope(targets.map { path -> File(path) })?.let { inferred ->
+                        println("======== easeLint scope:$inferred, issues need a wider scope are skipped")
+                        scope = inferred
+                    }
+                }
+            } else {
+                println("======== easeLint target manifest not found:$manifest")
             }
         }
         this.projects = projects
-        println("======== easeLint projects.subset:${projects?.first()?.subset?.size} ========")
+        println("======== easeLint projects.subset:${projects?.firstOrNull()?.subset?.size} ========")
         return this
     }
 
     companion object {
-        private val targetFiles: JvmWideVariable<ArrayList<String>> =
-            JvmWideVariable(
-                LintRequest::class.java,
-                "targetFiles",
-                object : TypeToken<ArrayList<String>>() {}
-            ) { ArrayList() }
+        /**
+         * 由 easeLint 插件的 ResolveEaseLintTargetsTask 写出，两边的路径约定需保持一致：
+         * <buildDir>/intermediates/easelint/<variant>/lint-targets.txt
+         * 第一行为 # 开头的头信息，之后每行一个文件绝对路径
+         */
+        private const val TARGET_MANIFEST_DIR = "intermediates/easelint"
+        private const val TARGET_MANIFEST_NAME = "lint-targets.txt"
+        private const val ZOMBIE_FILE_NAME = "easeLint.zombie"
+
+        /**
+         * 清单旁的 lease 文件记录本次构建的 token，插件同时以 easelint.targets.<token> 登记为系统属性，
+         * 构建结束时清除，需与插件中的 TargetResolution、TargetManifestService 保持一致
+         */
+        private const val LEASE_NAME = "lint-targets.lease"
+        private const val TOKEN_PROPERTY_PREFIX = "easelint.targets."
+
+        /**
+         * 由 easeLint 插件的 TreatEaseLintResultTask 写出，记录上一次扫描没有问题的文件，
+         * 每行一个 key = sha256(配置指纹 + 文件绝对路径 + 文件内容 sha256)，需与插件中的 LintResultCache 保持一致
+         */
+        private const val CLEAN_FILES_NAME = "clean-files.txt"
+        private const val FINGERPRINT_PREFIX = "#fingerprint="
+
+        /**
+         * 插件开启 easeLintNarrowScope 时写入清单的头信息，需与插件中的 TargetResolution 保持一致
+         */
+        private const val NARROW_SCOPE_HEADER = "#narrowScope=true"
+
+        private fun buildFolder(project: Project): File {
+            return project.buildModule?.buildFolder ?: File(project.dir, "build")
+        }
+
+        private fun targetManifest(project: Project): File {
+            val variant = project.buildVariant?.name ?: "debug"
+            return File(buildFolder(project), "$TARGET_MANIFEST_DIR/$variant/$TARGET_MANIFEST_NAME")
+        }
+
+        /**
+         * 内容与扫描配置都没有变化、且上一次没有问题的文件直接跳过
+         */
+        private fun skipCleanFiles(
+            project: Project,
+            manifest: File,
+            targets: List<String>
+        ): List<String> {
+            val fingerprint = manifest.useLines { lines ->
+                lines.firstOrNull { it.startsWith(FINGERPRINT_PREFIX) }
+            }?.removePrefix(FINGERPRINT_PREFIX) ?: return targets
+            val cleanFiles = File(manifest.parentFile, CLEAN_FILES_NAME)
+            if (fingerprint.isEmpty() || !cleanFiles.isFile) return targets
+            val keys = cleanFiles.readLines().toHashSet()
+            val remain = targets.filter { path ->
+                val file = File(path)
+                !file.isFile || !keys.contains(cacheKey(fingerprint, file))
+            }
+            println("======== easeLint ${project.name} skip clean files:${targets.size - remain.size}")
+            return remain
+        }
+
+        private fun cacheKey(fingerprint: String, file: File): String {
+            val contentDigest = MessageDigest.getInstance("SHA-256").digest(file.readBytes())
+            val digest = MessageDigest.getInstance("SHA-256")
+            listOf(fingerprint, file.absolutePath, contentDigest.toHex()).forEach {
+                digest.update(it.toByteArray(Charsets.UTF_8))
+                digest.update(0.toByte())
+            }
+            return digest.digest().toHex()
+        }
+
+        private fun ByteArray.toHex(): String {
+            val builder = StringBuilder(size * 2)
+            forEach { builder.append(String.format("%02x", it)) }
+            return builder.toString()
+        }
+
+        private fun isLeased(manifest: File): Boolean {
+            val lease = File(manifest.parentFile, LEASE_NAME)
+            if (!lease.isFile) return false
+            val token = lease.readText().trim()
+            return token.isNotEmpty() && System.getProperty(TOKEN_PROPERTY_PREFIX + token) != null
+        }
+
+        private fun isNarrowScope(manifest: File): Boolean {
+            return manifest.useLines { lines ->
+                lines.takeWhile { it.startsWith("#") }.any { it == NARROW_SCOPE_HEADER }
+            }
+        }
+
+        private fun readTargetManifest(manifest: File): List<String> {
+            return manifest.readLines().filter { it.isNotEmpty() && !it.startsWith("#") }
+        }
+
+        /**
+         * 根据目标文件的类型推断最小的扫描范围，需要更大范围的 issue 会被 lint 跳过，
+         * 与 IDE 中单文件扫描的行为一致；存在无法识别的文件类型时返回 null，保持 lint 默认的扫描范围
+         */
+        private fun inferScope(files: List<File>): EnumSet<Scope>? {
+            if (files.isEmpty()) return null
+            val scope = EnumSet.noneOf(Scope::class.java)
+            files.forEach { file ->
+                val name = file.name
+                val parent = file.parentFile?.name.orEmpty()
+                when {
+                    name == SdkConstants.ANDROID_MANIFEST_XML -> scope.add(Scope.MANIFEST)
+                    name.endsWith(SdkConstants.DOT_JAVA) || name.endsWith(SdkConstants.DOT_KT) ->
+                        scope.add(Scope.JAVA_FILE)
+                    name.endsWith(SdkConstants.DOT_GRADLE) || name.endsWith(".gradle.kts") ->
+                        scope.add(Scope.GRADLE_FILE)
+                    name.endsWith(SdkConstants.DOT_PROPERTIES) -> scope.add(Scope.PROPERTY_FILE)
+                    name.endsWith(".pro") || name == SdkConstants.FN_PROJECT_PROGUARD_FILE ||
+                            name == SdkConstants.OLD_PROGUARD_FILE -> scope.add(Scope.PROGUARD_FILE)
+                    // res/<type> 下的 xml 与图片，其他目录下的 xml（lint.xml、assets 等）保持默认范围
+                    !isResourceFile(file) -> return null
+                    name.endsWith(SdkConstants.DOT_XML) -> scope.add(Scope.RESOURCE_FILE)
+                    parent.startsWith(SdkConstants.FD_RES_DRAWABLE) ||
+                            parent.startsWith(SdkConstants.FD_RES_MIPMAP) ->
+                        scope.add(Scope.BINARY_RESOURCE_FILE)
+                    else -> return null
+                }
+            }
+            return scope
+        }
+
+        private fun isResourceFile(file: File): Boolean {
+            val folder = file.parentFile ?: return false
+            return folder.parentFile?.name == SdkConstants.FD_RES &&
+                    ResourceFolderType.getFolderType(folder.name) != null
+        }
+
+        private fun zombieFile(project: Project): File {
+            val file = File(buildFolder(project), ZOMBIE_FILE_NAME)
+            if (!file.exists()) {
+                file.parentFile.mkdirs()
+                file.createNewFile()
+            }
+            return file
+        }
     }
 }